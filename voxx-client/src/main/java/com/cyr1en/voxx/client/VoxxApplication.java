@@ -17,11 +17,14 @@ public class VoxxApplication extends Application {
 
     public static String serverHost = "localhost";
     public static int serverPort = 8008;
+    public static boolean binaryProtocol = Boolean.getBoolean("voxx.binary");
+    public static long requestTimeout = Long.getLong("voxx.request.timeout", 10000);
 
     private ReqResClientConnection client;
     private UpdateMessageConnection uMConnection;
     private PrimaryStageManager stageManager;
     private User assocUser;
+    private String resumeToken;
 
     @Override
     public void start(Stage stage) throws IOException {
@@ -54,6 +57,17 @@ public class VoxxApplication extends Application {
         this.assocUser = user;
     }
 
+    /**
+     * @return token to resume the session of the user with after the connection dropped, may be null.
+     */
+    public String getResumeToken() {
+        return resumeToken;
+    }
+
+    public void setResumeToken(String resumeToken) {
+        this.resumeToken = resumeToken;
+    }
+
     public void setClient(ReqResClientConnection client) {
         this.client = client;
     }
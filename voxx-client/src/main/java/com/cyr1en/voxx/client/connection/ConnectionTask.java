@@ -2,20 +2,21 @@ package com.cyr1en.voxx.client.connection;
 
 import javafx.concurrent.Task;
 
-import java.io.IOException;
-import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 
 import static com.cyr1en.voxx.client.VoxxApplication.serverHost;
 import static com.cyr1en.voxx.client.VoxxApplication.serverPort;
 
 public class ConnectionTask extends Task<ReqResClientConnection> {
 
-    private final int interval;
-    private final int tries;
+    private final ReconnectManager reconnectManager;
 
+    /**
+     * @param interval base delay between attempts in milliseconds, it doubles after every failed attempt.
+     * @param tries    number of attempts before giving up.
+     */
     public ConnectionTask(int interval, int tries) {
-        this.interval = interval;
-        this.tries = tries;
+        this.reconnectManager = new ReconnectManager(interval, 30000, tries);
     }
 
     public ConnectionTask() {
@@ -24,22 +25,17 @@ public class ConnectionTask extends Task<ReqResClientConnection> {
 
     @Override
     protected ReqResClientConnection call() {
-        var curr_tries = 0;
-        ReqResClientConnection client = null;
-        var last = System.currentTimeMillis();
-        while (Objects.isNull(client) && curr_tries < tries) {
-            if ((System.currentTimeMillis() - last) < interval) continue;
-            System.out.println("Trying to connect to server...");
-            try {
-                client = new ReqResClientConnection(serverHost, serverPort);
-            } catch (IOException e) {
-                System.err.println("Could not connect to server!");
-            }
-            curr_tries = curr_tries + 1;
-            System.out.printf("Tries: %d%n", curr_tries);
-            last = System.currentTimeMillis();
+        var connection = reconnectManager.connect(() -> new ReqResClientConnection(serverHost, serverPort));
+        try {
+            return connection.get();
+        } catch (InterruptedException e) {
+            // The task was cancelled
+            connection.cancel(false);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Could not connect to server!");
         }
-        return client;
+        return null;
     }
 
 }
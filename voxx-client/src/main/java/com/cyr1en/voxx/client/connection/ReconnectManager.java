@@ -0,0 +1,92 @@
+package com.cyr1en.voxx.client.connection;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries connecting to the server with jittered exponential backoff.
+ * <p>
+ * Attempt {@code n} waits a random delay between 0 and {@code min(maxDelay, baseDelay * 2^n)}
+ * ("full jitter"). Waiting happens on a scheduler instead of a spinning thread, and because every
+ * client picks its own random delay, clients that lost their connection at the same time, like
+ * during a server restart, spread their reconnects out instead of arriving all at once.
+ */
+public class ReconnectManager {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "voxx-reconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long baseDelay;
+    private final long maxDelay;
+    private final int maxAttempts;
+
+    /**
+     * Something that connects, or fails with an {@link IOException} when it should be retried.
+     * Any other exception ends the retries.
+     */
+    @FunctionalInterface
+    public interface Connector<T> {
+        T connect() throws IOException;
+    }
+
+    /**
+     * @param baseDelay   upper bound of the first delay in milliseconds.
+     * @param maxDelay    upper bound of any delay in milliseconds.
+     * @param maxAttempts number of attempts before giving up.
+     */
+    public ReconnectManager(long baseDelay, long maxDelay, int maxAttempts) {
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public ReconnectManager() {
+        this(500, 30000, 10);
+    }
+
+    /**
+     * Start connecting in the background. The first attempt is delayed too, so many clients
+     * starting at once don't hit the server together.
+     *
+     * @param connector makes one attempt.
+     * @return a future that completes with the result of the first successful attempt, or
+     * exceptionally when all attempts failed. Cancelling it stops the retries.
+     */
+    public <T> CompletableFuture<T> connect(Connector<T> connector) {
+        var result = new CompletableFuture<T>();
+        schedule(connector, result, 0);
+        return result;
+    }
+
+    /**
+     * @param attempt number of attempts that failed so far.
+     * @return delay before the next attempt in milliseconds.
+     */
+    public long delay(int attempt) {
+        var cap = Math.min(maxDelay, baseDelay << Math.min(attempt, 30));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private <T> void schedule(Connector<T> connector, CompletableFuture<T> result, int attempt) {
+        SCHEDULER.schedule(() -> {
+            if (result.isDone()) return;
+            System.out.println("Trying to connect to server...");
+            try {
+                result.complete(connector.connect());
+            } catch (IOException e) {
+                System.err.printf("Could not connect to server! Tries: %d%n", attempt + 1);
+                if (attempt + 1 < maxAttempts) schedule(connector, result, attempt + 1);
+                else result.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }, delay(attempt), TimeUnit.MILLISECONDS);
+    }
+}
@@ -1,54 +1,232 @@
-
 package com.cyr1en.voxx.client.connection;
 
-import com.cyr1en.voxx.commons.protocol.ProtocolUtil;
+import com.cyr1en.voxx.client.VoxxApplication;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+/**
+ * Connection to the server that requests are sent through.
+ * <p>
+ * Every request gets a correlation id ({@code cid}) and a reader thread matches the responses to
+ * their requests by it. When the user registered with {@code "mux": true} and the server accepted,
+ * the same connection also carries the update messages of the user, which the reader hands to the
+ * {@link #onUpdateMessage(Consumer) update handler} instead of opening an {@link UpdateMessageConnection}.
+ * Servers that don't echo correlation ids answer in order, so such responses complete the oldest request.
+ */
 public class ReqResClientConnection {
     private final Socket socket;
-    private final PrintWriter out;
-    private final BufferedReader reader;
+    private final WireChannel channel;
+    private final AtomicLong nextCid;
+    private final ConcurrentSkipListMap<Long, CompletableFuture<JSONObject>> pending;
+    private final Queue<JSONObject> bufferedUpdates;
+    private Consumer<JSONObject> onUpdateMessage;
+    private volatile Runnable onDisconnect;
+    private volatile boolean multiplexed;
+    private volatile long lastSeq;
 
     public ReqResClientConnection(String host, int port) throws IOException {
-        this.socket = new Socket(host, port);
-        socket.setKeepAlive(true);
-        this.out = new PrintWriter(socket.getOutputStream(), true);
-        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        this.channel = WireChannel.open(host, port, VoxxApplication.binaryProtocol);
+        this.socket = channel.getSocket();
+        this.nextCid = new AtomicLong();
+        this.pending = new ConcurrentSkipListMap<>();
+        this.bufferedUpdates = new ArrayDeque<>();
+        var reader = new Thread(this::readLoop, "voxx-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Connect and resume the session of a user whose previous connection dropped.
+     *
+     * @param host    server host.
+     * @param port    server port.
+     * @param token   resume token the server sent when the user registered.
+     * @param lastSeq sequence number of the last update received, see {@link #getLastSeq()}.
+     * @return a multiplexed connection that continues the session, updates missed since {@code lastSeq}
+     * are delivered to the update handler first.
+     * @throws IOException           if the server could not be reached.
+     * @throws IllegalStateException if the server no longer knows the session.
+     */
+    public static ReqResClientConnection resume(String host, int port, String token, long lastSeq) throws IOException {
+        var connection = new ReqResClientConnection(host, port);
+        var params = new JSONObject().put("token", token).put("seq", lastSeq).put("mux", true);
+        var response = connection.sendRequest(new JSONObject().put("request-id", "rs").put("params", params));
+        if (response == null) {
+            connection.closeConnection();
+            throw new IOException("Server did not respond");
+        }
+        if (response.getInt("response-id") != 1) {
+            connection.closeConnection();
+            throw new IllegalStateException(response.getJSONObject("body").optString("message", "Could not resume"));
+        }
+        connection.setMultiplexed(response.getJSONObject("body").optBoolean("mux"));
+        connection.lastSeq = lastSeq;
+        return connection;
     }
 
     public void closeConnection() {
         try {
             socket.close();
-            out.close();
-            reader.close();
         } catch (IOException e) {
             System.err.println("Could not properly close connection!");
         }
     }
 
     public boolean isConnected() {
-        return socket.isConnected();
+        return socket.isConnected() && !socket.isClosed();
+    }
+
+    public boolean isBinary() {
+        return channel.isBinary();
+    }
+
+    /**
+     * @return true if this connection also receives the update messages of the user.
+     */
+    public boolean isMultiplexed() {
+        return multiplexed;
     }
 
-    public BufferedReader getReader() {
-        return reader;
+    public void setMultiplexed(boolean multiplexed) {
+        this.multiplexed = multiplexed;
     }
 
-    public synchronized JSONObject sendRequest(JSONObject req) {
-        var reqStr = ProtocolUtil.flattenJSONObject(req);
-        out.println(reqStr);
+    /**
+     * @return sequence number of the last update that arrived on this connection, 0 if none did.
+     */
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Set the handler for update messages. Updates that arrived before a handler was set are passed
+     * to it right away, so nothing is lost between registering and setting up the chat window.
+     *
+     * @param onUpdateMessage handler, called on the reader thread.
+     */
+    public void onUpdateMessage(Consumer<JSONObject> onUpdateMessage) {
+        synchronized (bufferedUpdates) {
+            this.onUpdateMessage = onUpdateMessage;
+            JSONObject update;
+            while ((update = bufferedUpdates.poll()) != null)
+                onUpdateMessage.accept(update);
+        }
+    }
+
+    public void onDisconnect(Runnable onDisconnect) {
+        this.onDisconnect = onDisconnect;
+    }
+
+    /**
+     * Send a request and wait for its response. Prefer {@link #sendRequestAsync(JSONObject)} on
+     * threads that must not block, like the JavaFX application thread.
+     *
+     * @param req the request to send.
+     * @return the response, or null if the request failed or timed out.
+     */
+    public JSONObject sendRequest(JSONObject req) {
         try {
-            return new JSONObject(reader.readLine());
-        } catch (Exception e) {
-            System.err.println("An error occurred sending a request");
+            return sendRequestAsync(req).join();
+        } catch (CompletionException | CancellationException e) {
+            System.err.println("An error occurred sending a request: " + e.getCause());
         }
         return null;
     }
 
+    /**
+     * Send a request without waiting for its response, using the
+     * {@link VoxxApplication#requestTimeout default timeout}.
+     *
+     * @param req the request to send.
+     * @return a future that completes with the response.
+     * @see #sendRequestAsync(JSONObject, long)
+     */
+    public CompletableFuture<JSONObject> sendRequestAsync(JSONObject req) {
+        return sendRequestAsync(req, VoxxApplication.requestTimeout);
+    }
+
+    /**
+     * Send a request without waiting for its response. Any number of requests can be in flight at
+     * the same time, their responses are matched by correlation id as they arrive.
+     * <p>
+     * The future completes exceptionally with a {@link TimeoutException} if no response arrived in
+     * time, and with an {@link IOException} if the request couldn't be sent or the connection closed.
+     * Dependent actions run on the reader thread, so they must not block.
+     *
+     * @param req       the request to send.
+     * @param timeoutMs how long to wait for the response in milliseconds, 0 or less waits forever.
+     * @return a future that completes with the response.
+     */
+    public CompletableFuture<JSONObject> sendRequestAsync(JSONObject req, long timeoutMs) {
+        var response = new CompletableFuture<JSONObject>();
+        // Ids are handed out in sending order, so responses without a cid can complete the oldest request.
+        synchronized (pending) {
+            var cid = nextCid.incrementAndGet();
+            pending.put(cid, response);
+            response.whenComplete((res, ex) -> {
+                if (ex != null) pending.remove(cid, response);
+            });
+            try {
+                channel.send(req.put("cid", cid));
+            } catch (IOException e) {
+                response.completeExceptionally(e);
+                return response;
+            }
+        }
+        return timeoutMs > 0 ? response.orTimeout(timeoutMs, TimeUnit.MILLISECONDS) : response;
+    }
+
+    private void readLoop() {
+        try {
+            JSONObject message;
+            while ((message = channel.receive()) != null) {
+                if (message.has("update-message")) onUpdate(message);
+                else onResponse(message);
+            }
+        } catch (Exception e) {
+            System.out.println("Connection closed");
+        }
+        closeConnection();
+        var closed = new IOException("Connection closed");
+        pending.values().forEach(f -> f.completeExceptionally(closed));
+        pending.clear();
+        var runnable = onDisconnect;
+        if (Objects.nonNull(runnable)) runnable.run();
+    }
+
+    private void onUpdate(JSONObject update) {
+        var seq = update.optLong("seq", 0);
+        if (seq > lastSeq) lastSeq = seq;
+        synchronized (bufferedUpdates) {
+            if (onUpdateMessage == null) bufferedUpdates.add(update);
+            else onUpdateMessage.accept(update);
+        }
+    }
+
+    private void onResponse(JSONObject response) {
+        var cid = response.optLong("cid", 0);
+        CompletableFuture<JSONObject> future;
+        if (cid != 0) {
+            future = pending.remove(cid);
+        } else {
+            Map.Entry<Long, CompletableFuture<JSONObject>> oldest = pending.pollFirstEntry();
+            future = oldest == null ? null : oldest.getValue();
+        }
+        if (future != null) future.complete(response);
+    }
+
 }
@@ -1,30 +1,24 @@
 package com.cyr1en.voxx.client.connection;
 
+import com.cyr1en.voxx.client.VoxxApplication;
 import com.cyr1en.voxx.commons.model.User;
-import com.cyr1en.voxx.commons.protocol.ProtocolUtil;
 import javafx.application.Platform;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.Socket;
 import java.util.function.Consumer;
 
 public class UpdateMessageConnection implements Runnable {
     private final Socket socket;
-    private final BufferedReader reader;
-    private final PrintWriter out;
+    private final WireChannel channel;
     private Consumer<JSONObject> onUpdateMessage;
     private Runnable onDisconnect;
     private boolean isRunning;
 
     public UpdateMessageConnection(User user, String host, int port) throws IOException {
-        this.socket = new Socket(host, port);
-        socket.setKeepAlive(true);
-        this.out = new PrintWriter(this.socket.getOutputStream(), true);
-        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        this.channel = WireChannel.open(host, port, VoxxApplication.binaryProtocol);
+        this.socket = channel.getSocket();
         setConnection(user.getUsername());
         onUpdateMessage = (s) -> {
         };
@@ -36,18 +30,14 @@ public class UpdateMessageConnection implements Runnable {
         var param = new JSONObject().put("main-user", mainUser);
         req.put("params", param);
         System.out.println("Sending: " + req);
-        out.println(ProtocolUtil.flattenJSONObject(req));
         try {
+            channel.send(req);
             // Just flush whatever the response is for now
-            reader.readLine();
+            channel.receive();
         } catch (IOException ignore) {
         }
     }
 
-    public BufferedReader getReader() {
-        return reader;
-    }
-
     public boolean isConnected() {
         return socket.isConnected();
     }
@@ -64,8 +54,6 @@ public class UpdateMessageConnection implements Runnable {
         System.out.println("Closing UM Connection");
         isRunning = false;
         try {
-            this.out.close();
-            this.reader.close();
             this.socket.close();
             Platform.runLater(() -> onDisconnect.run());
         } catch (IOException e) {
@@ -80,11 +68,10 @@ public class UpdateMessageConnection implements Runnable {
     @Override
     public void run() {
         try {
-            String line = null;
+            JSONObject json;
             System.out.println("TASK CALL");
-            while ((line = getReader().readLine()) != null && isRunning) {
+            while ((json = channel.receive()) != null && isRunning) {
                 if (!isConnected()) continue;
-                var json = new JSONObject(line);
                 onUpdateMessage.accept(json);
             }
         } catch (IOException exception) {
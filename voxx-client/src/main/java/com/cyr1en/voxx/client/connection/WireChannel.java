@@ -0,0 +1,126 @@
+package com.cyr1en.voxx.client.connection;
+
+import com.cyr1en.voxx.commons.esal.LengthFrameDecoder;
+import com.cyr1en.voxx.commons.protocol.BinaryCodec;
+import com.cyr1en.voxx.commons.protocol.ProtocolUtil;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends requests to and reads messages from the server in either of the two wire formats.
+ * <p>
+ * When the binary format is requested, the {@link BinaryCodec#PREAMBLE} is sent right after
+ * connecting. If the server doesn't echo it in time, it doesn't know the binary format and the
+ * channel falls back to JSON lines on a new connection: the server may still answer the preamble
+ * later, and that answer would be mistaken for the response to the first request.
+ * Either way callers only deal with {@link JSONObject}s.
+ */
+class WireChannel {
+
+    private static final int HANDSHAKE_TIMEOUT = 2000;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private boolean binary;
+    private BufferedReader reader;
+
+    private WireChannel(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /**
+     * Connect to the server and negotiate the wire format.
+     *
+     * @param host          server host.
+     * @param port          server port.
+     * @param requestBinary true to use the binary format if the server supports it.
+     * @return the channel.
+     * @throws IOException if the server could not be reached.
+     */
+    static WireChannel open(String host, int port, boolean requestBinary) throws IOException {
+        var channel = new WireChannel(connect(host, port));
+        if (requestBinary) {
+            try {
+                channel.binary = channel.handshake();
+            } catch (SocketTimeoutException e) {
+                System.err.println("Server does not support the binary protocol, using JSON");
+                channel.socket.close();
+                channel = new WireChannel(connect(host, port));
+            }
+        }
+        if (!channel.binary)
+            channel.reader = new BufferedReader(new InputStreamReader(channel.in, StandardCharsets.UTF_8));
+        return channel;
+    }
+
+    private static Socket connect(String host, int port) throws IOException {
+        var socket = new Socket(host, port);
+        socket.setKeepAlive(true);
+        return socket;
+    }
+
+    private boolean handshake() throws IOException {
+        out.write((BinaryCodec.PREAMBLE + '\n').getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+        try {
+            // Read byte by byte so nothing after the echo is buffered away from the frame reader.
+            var line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1 && b != '\n')
+                line.write(b);
+            return BinaryCodec.PREAMBLE.equals(line.toString(StandardCharsets.UTF_8).strip());
+        } finally {
+            socket.setSoTimeout(0);
+        }
+    }
+
+    Socket getSocket() {
+        return socket;
+    }
+
+    boolean isBinary() {
+        return binary;
+    }
+
+    synchronized void send(JSONObject request) throws IOException {
+        if (binary) {
+            var frame = BinaryCodec.encodeRequest(request);
+            var bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            out.write(bytes);
+        } else {
+            out.write((ProtocolUtil.flattenJSONObject(request) + '\n').getBytes(StandardCharsets.UTF_8));
+        }
+        out.flush();
+    }
+
+    /**
+     * Read the next response or update message.
+     *
+     * @return the message, or null if the server closed the connection.
+     * @throws IOException if reading failed.
+     */
+    JSONObject receive() throws IOException {
+        if (binary) {
+            var payload = LengthFrameDecoder.readFrame(in, BinaryCodec.MAX_FRAME_LENGTH);
+            return payload == null ? null : BinaryCodec.decodeMessage(payload);
+        }
+        var line = reader.readLine();
+        return line == null ? null : new JSONObject(line);
+    }
+}
@@ -1,6 +1,8 @@
 package com.cyr1en.voxx.client.controllers;
 
 import com.cyr1en.voxx.client.VoxxApplication;
+import com.cyr1en.voxx.client.connection.ReconnectManager;
+import com.cyr1en.voxx.client.connection.ReqResClientConnection;
 import com.cyr1en.voxx.client.connection.UpdateMessageConnection;
 import com.cyr1en.voxx.commons.model.Message;
 import com.cyr1en.voxx.commons.model.UID;
@@ -21,6 +23,8 @@ import javafx.scene.text.Text;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.Executors;
 
 
@@ -43,13 +47,16 @@ public class ChatController {
 
     private VoxxApplication instance;
     private final User system;
+    private final Set<Long> shownMessages;
+    private long lastMessageUid;
 
     public ChatController() throws IOException {
         this.userList = new ListView<>();
         this.chatBox = new VBox();
-        this.system = new User(UID.Generator.generate(), "System");
+        this.system = new User(UID.Generator.generateLong(), "System");
         this.unameLabel = new Label();
         this.cBoxScrollPane = new ScrollPane();
+        this.shownMessages = new HashSet<>();
     }
 
     public void initialize() {
@@ -57,16 +64,20 @@ public class ChatController {
         chatBox.getChildren().clear();
         chatBox.heightProperty().addListener((observable, oldValue, newValue) -> cBoxScrollPane.setVvalue(cBoxScrollPane.getVmax()));
         addMessage(new Message(system,
-                "Welcome to Voxx! This chat is not moderated, please be nice and civil.", UID.Generator.generate()));
+                "Welcome to Voxx! This chat is not moderated, please be nice and civil.", UID.Generator.generateLong()));
     }
 
     public void updateUserList() {
         if (!instance.isConnected()) return;
-        var response = instance.getClient().sendRequest(new JSONObject().put("request-id", "ul"));
-        var body = response.getJSONObject("body");
-        body.getJSONArray("users").forEach(o -> {
-            var jO = (JSONObject) o;
-            addUserList(jO.getString("uname"));
+        instance.getClient().sendRequestAsync(new JSONObject().put("request-id", "ul")).thenAccept(response -> {
+            var body = response.getJSONObject("body");
+            Platform.runLater(() -> {
+                userList.getItems().clear();
+                body.getJSONArray("users").forEach(o -> {
+                    var jO = (JSONObject) o;
+                    addUserList(jO.getString("uname"));
+                });
+            });
         });
     }
 
@@ -80,15 +91,73 @@ public class ChatController {
     }
 
     public void startTask() {
+        var client = instance.getClient();
+        if (client.isMultiplexed()) {
+            attach(client);
+            requestHistory(0);
+            return;
+        }
         connectSupplemental();
         instance.getUMConnection().onUpdateMessage(this::handleUM);
         instance.getUMConnection().onDisconnect(()->addMessage(new Message(system,
-                "Disconnected from the server! Please try re-connecting.", UID.Generator.generate())));
+                "Disconnected from the server! Please try re-connecting.", UID.Generator.generateLong())));
         var executor = Executors.newSingleThreadExecutor();
         executor.execute(instance.getUMConnection());
         executor.shutdown();
     }
 
+    private void attach(ReqResClientConnection client) {
+        client.onDisconnect(() -> onConnectionLost(client));
+        client.onUpdateMessage(this::handleUM);
+    }
+
+    /**
+     * Resume the session on a new connection. Updates missed in the meantime are replayed by the
+     * server, and the user list is fetched again in case some of them were no longer available.
+     */
+    private void onConnectionLost(ReqResClientConnection lost) {
+        var token = instance.getResumeToken();
+        if (token == null) {
+            Platform.runLater(() -> addMessage(new Message(system,
+                    "Disconnected from the server! Please try re-connecting.", UID.Generator.generateLong())));
+            return;
+        }
+        Platform.runLater(() -> addMessage(new Message(system,
+                "Lost connection to the server, reconnecting...", UID.Generator.generateLong())));
+        new ReconnectManager().connect(() -> ReqResClientConnection.resume(VoxxApplication.serverHost,
+                VoxxApplication.serverPort, token, lost.getLastSeq())).whenComplete((client, ex) -> Platform.runLater(() -> {
+            if (ex != null) {
+                addMessage(new Message(system, "Disconnected from the server! Please try re-connecting.",
+                        UID.Generator.generateLong()));
+                return;
+            }
+            instance.setClient(client);
+            attach(client);
+            requestHistory(lastMessageUid);
+            updateUserList();
+            addMessage(new Message(system, "Reconnected.", UID.Generator.generateLong()));
+        }));
+    }
+
+    /**
+     * Fetch the messages after a message from the server history, one batch after the other. The
+     * messages arrive as regular "nm" update messages, duplicates are skipped when they are shown.
+     */
+    private void requestHistory(long sinceUid) {
+        var req = new JSONObject().put("request-id", "hs").put("params", new JSONObject().put("since", sinceUid));
+        instance.getClient().sendRequestAsync(req).thenAccept(response -> {
+            var body = response.getJSONObject("body");
+            if (response.getInt("response-id") == 1 && body.optBoolean("more"))
+                requestHistory(body.getLong("last"));
+        });
+    }
+
+    private void showMessage(Message message) {
+        var uid = message.getUIDAsLong();
+        if (uid > lastMessageUid) lastMessageUid = uid;
+        if (shownMessages.add(uid)) addMessage(message);
+    }
+
     private void handleUM(JSONObject msg) {
         System.out.println("Update message: " + msg);
         var key = msg.getString("update-message");
@@ -103,10 +172,10 @@ public class ChatController {
                 System.out.println("Adding message");
                 var senderJson = body.getJSONObject("sender");
                 var messageJson = body.getJSONObject("message");
-                var sender = new User(UID.of(senderJson.getLong("uid")), senderJson.getString("uname"));
+                var sender = new User(senderJson.getLong("uid"), senderJson.getString("uname"));
                 var message = new Message(sender, messageJson.getString("content"),
-                        UID.of(messageJson.getLong("uid")));
-                Platform.runLater(() -> addMessage(message));
+                        messageJson.getLong("uid"));
+                Platform.runLater(() -> showMessage(message));
             }
             case "ud" -> {
                 var name = body.getJSONObject("user").getString("uname");
@@ -129,7 +198,7 @@ public class ChatController {
         uNameLabel.setTextFill(Color.BLACK);
         uNameLabel.setPadding(new Insets(0, 5, 0, 0));
 
-        var tsLabel = new Label(message.getUID().getTimestampString());
+        var tsLabel = new Label(UID.formatTimestamp(message.getUIDAsLong()));
         tsLabel.setFont(new Font(10));
         tsLabel.setTextFill(Color.valueOf("#949494"));
         infoHbox.getChildren().addAll(uNameLabel, tsLabel);
@@ -172,11 +241,18 @@ public class ChatController {
             reqJson.put("request-id", "sm");
             reqJson.put("params", new JSONObject().put("message", text));
 
-            var response = instance.getClient().sendRequest(reqJson);
-            var resMessage = response.getJSONObject("body").getJSONObject("message");
-            var message = new Message(this.instance.getAssocUser(), resMessage.getString("content"),
-                    UID.of(resMessage.getLong("uid")));
-            addMessage(message);
+            // The message is shown once the server accepted it, the field is free for the next one right away.
+            instance.getClient().sendRequestAsync(reqJson).whenComplete((response, ex) -> Platform.runLater(() -> {
+                if (ex != null) {
+                    addMessage(new Message(system, "Your message could not be sent: " + text,
+                            UID.Generator.generateLong()));
+                    return;
+                }
+                var resMessage = response.getJSONObject("body").getJSONObject("message");
+                var message = new Message(this.instance.getAssocUser(), resMessage.getString("content"),
+                        resMessage.getLong("uid"));
+                showMessage(message);
+            }));
             msgField.setText("");
             msgField.setPromptText("Type message here...");
         }
@@ -2,7 +2,6 @@ package com.cyr1en.voxx.client.controllers;
 
 import com.cyr1en.voxx.client.VoxxApplication;
 import com.cyr1en.voxx.client.connection.ConnectionTask;
-import com.cyr1en.voxx.commons.model.UID;
 import com.cyr1en.voxx.commons.model.User;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
@@ -14,6 +13,7 @@ import javafx.scene.shape.Circle;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Optional;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -61,7 +61,7 @@ public class LoginController {
     }
 
     @FXML
-    protected void onStartChattingPress() throws IOException {
+    protected void onStartChattingPress() {
         var uName = uNameField.getText();
         if (!UNAME_REGEX.matcher(uName).find()) {
             warningLabel.setText("Invalid username!");
@@ -74,8 +74,23 @@ public class LoginController {
 
         var reqJSON = new JSONObject();
         reqJSON.put("request-id", "ru");
-        reqJSON.put("params", new JSONObject().put("uname", uName));
-        var response = voxxApplication.getClient().sendRequest(reqJSON);
+        reqJSON.put("params", new JSONObject().put("uname", uName).put("mux", true));
+        scButton.setDisable(true);
+        voxxApplication.getClient().sendRequestAsync(reqJSON).whenComplete((response, ex) -> Platform.runLater(() -> {
+            scButton.setDisable(false);
+            if (ex != null) {
+                warningLabel.setText("Server did not respond!");
+                return;
+            }
+            try {
+                onRegisterResponse(response);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+
+    private void onRegisterResponse(JSONObject response) throws IOException {
         System.out.println("RU response: " + response);
         var resBody = response.getJSONObject("body");
         var resId = response.getInt("response-id");
@@ -83,8 +98,11 @@ public class LoginController {
             warningLabel.setText(resBody.getString("message"));
         } else if (resId == 1) {
             var userJSON = resBody.getJSONObject("user");
-            var uid = UID.of(userJSON.getLong("uid"));
+            var uid = userJSON.getLong("uid");
             voxxApplication.setAssocUser(new User(uid, userJSON.getString("uname")));
+            voxxApplication.setResumeToken(resBody.optString("token", null));
+            // Servers that don't support multiplexing leave the flag out, then updates need their own connection.
+            voxxApplication.getClient().setMultiplexed(resBody.optBoolean("mux"));
 
             Consumer<ChatController> consumer = (c) -> {
                 c.setVoxxApplication(this.voxxApplication);
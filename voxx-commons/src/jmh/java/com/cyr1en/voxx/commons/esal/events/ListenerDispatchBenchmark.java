@@ -0,0 +1,63 @@
+package com.cyr1en.voxx.commons.esal.events;
+
+import com.cyr1en.voxx.commons.esal.events.annotation.EventListener;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of calling an {@link EventListener} method through plain reflection (how the
+ * {@link EventBus} used to do it) against the invoker compiled by {@link EventBus.ListenerMethod}.
+ * <p>
+ * Run with {@code ./gradlew :voxx-commons:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ListenerDispatchBenchmark {
+
+    private SampleListener listener;
+    private Method method;
+    private EventBus.ListenerMethod compiled;
+    private SampleEvent event;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        listener = new SampleListener();
+        method = SampleListener.class.getDeclaredMethod("onSample", SampleEvent.class);
+        compiled = new EventBus.ListenerMethod(listener, method);
+        event = new SampleEvent("Hello, World!");
+    }
+
+    @Benchmark
+    public void direct(Blackhole bh) {
+        listener.onSample(event);
+        bh.consume(listener.last);
+    }
+
+    @Benchmark
+    public void reflective(Blackhole bh) throws Exception {
+        method.invoke(listener, new Object[]{event});
+        bh.consume(listener.last);
+    }
+
+    @Benchmark
+    public void compiled(Blackhole bh) throws Throwable {
+        compiled.invoke(event);
+        bh.consume(listener.last);
+    }
+
+    public record SampleEvent(String message) {
+    }
+
+    public static class SampleListener implements EventBus.Listener {
+        private String last;
+
+        @EventListener
+        public void onSample(SampleEvent event) {
+            last = event.message();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.cyr1en.voxx.commons.protocol;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the regex that used to flatten every outbound message against {@link ProtocolUtil#compact(String)}
+ * and {@link ProtocolUtil#flattenJSONObject(JSONObject)}, and building the message as a {@link JSONObject}
+ * tree against writing it with {@link JsonWriter}. Run with {@code -prof gc} to compare allocations.
+ * <p>
+ * Run with {@code ./gradlew :voxx-commons:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FramingBenchmark {
+
+    private JSONObject message;
+    private String compactJson;
+    private String prettyJson;
+
+    @Setup
+    public void setup() {
+        message = new JSONObject()
+                .put("update-message", "nm")
+                .put("body", new JSONObject()
+                        .put("sender", new JSONObject().put("uid", 1737213412345678L).put("uname", "cyr1en"))
+                        .put("message", "Hello, World! This is a chat message of average length.")
+                        .put("message-id", 1737213412345679L));
+        compactJson = message.toString();
+        prettyJson = message.toString(2);
+    }
+
+    @Benchmark
+    public String regexJsonObject() {
+        var flat = message.toString().replaceAll("\\s{2,}|\\n", "");
+        return flat.replaceAll("\\s{2,}|\\n", "");
+    }
+
+    @Benchmark
+    public String flattenJsonObject() {
+        return ProtocolUtil.compact(ProtocolUtil.flattenJSONObject(message));
+    }
+
+    @Benchmark
+    public ByteBuffer jsonObjectFrame() {
+        var update = new JSONObject()
+                .put("update-message", "nm")
+                .put("body", new JSONObject()
+                        .put("sender", new JSONObject().put("uid", 1737213412345678L).put("uname", "cyr1en"))
+                        .put("message", new JSONObject()
+                                .put("uid", 1737213412345679L)
+                                .put("content", "Hello, World! This is a chat message of average length.")));
+        return ProtocolUtil.encodeFrame(update);
+    }
+
+    @Benchmark
+    public ByteBuffer jsonWriterFrame() {
+        return JsonWriter.get().beginUpdate("nm")
+                .name("sender").beginObject().name("uid").value(1737213412345678L).name("uname").value("cyr1en")
+                .endObject()
+                .name("message").beginObject().name("uid").value(1737213412345679L)
+                .name("content").value("Hello, World! This is a chat message of average length.").endObject()
+                .endEnvelope()
+                .toFrame();
+    }
+
+    @Benchmark
+    public String regexCompactString() {
+        return compactJson.replaceAll("\\s{2,}|\\n", "");
+    }
+
+    @Benchmark
+    public String compactCompactString() {
+        return ProtocolUtil.compact(compactJson);
+    }
+
+    @Benchmark
+    public String regexPrettyString() {
+        return prettyJson.replaceAll("\\s{2,}|\\n", "");
+    }
+
+    @Benchmark
+    public String compactPrettyString() {
+        return ProtocolUtil.compact(prettyJson);
+    }
+}
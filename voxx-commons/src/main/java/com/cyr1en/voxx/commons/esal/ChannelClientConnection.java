@@ -0,0 +1,170 @@
+package com.cyr1en.voxx.commons.esal;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking {@link ClientConnection} backed by a {@link SocketChannel}.
+ * <p>
+ * This connection does not own a thread. Reading and writing is done by the {@link NioEventLoop}
+ * it was registered to, which frames the incoming bytes with a {@link LineFrameDecoder}, or a
+ * {@link LengthFrameDecoder} once the client switched to {@link Framing#LENGTH_PREFIXED}.
+ * Outbound frames are queued and flushed by the loop whenever the channel is writable, using
+ * gathering writes so that a batch of queued frames goes out with a single system call.
+ */
+public class ChannelClientConnection extends ClientConnection {
+
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final int WRITE_BATCH_SIZE = 64;
+
+    private final SocketChannel channel;
+    private final NioEventLoop eventLoop;
+    private final LineFrameDecoder decoder;
+    private LengthFrameDecoder binaryDecoder;
+    private final ByteBuffer[] writeBatch;
+    private int batchOffset;
+    private int batchLength;
+    private final AtomicBoolean writeRequested;
+    private final AtomicBoolean closed;
+    private volatile SelectionKey selectionKey;
+    private boolean readPaused;
+    // Bytes that were read but not decoded yet because the event queue of this connection filled up.
+    private ByteBuffer unread;
+
+    ChannelClientConnection(SocketChannel channel, Server serverInstance, NioEventLoop eventLoop) throws IOException {
+        super(serverInstance, remoteAddressOf(channel));
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.decoder = new LineFrameDecoder(MAX_LINE_LENGTH);
+        this.writeBatch = new ByteBuffer[WRITE_BATCH_SIZE];
+        this.writeRequested = new AtomicBoolean(false);
+        this.closed = new AtomicBoolean(false);
+        channel.configureBlocking(false);
+        channel.socket().setKeepAlive(true);
+        channel.socket().setTcpNoDelay(true);
+    }
+
+    private static String remoteAddressOf(SocketChannel channel) throws IOException {
+        var address = (InetSocketAddress) channel.getRemoteAddress();
+        return address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Decode the bytes read from the channel with the current {@link Framing}. Must be called on the loop thread.
+     * <p>
+     * The event queue of the connection is checked after every frame. Once it is full, decoding stops and
+     * the bytes that were not decoded yet are kept until {@link #decodeUnread()} is called, so the loop
+     * never has to block on a full queue.
+     *
+     * @param in bytes that were read.
+     * @return false if decoding stopped because the event queue of this connection is full.
+     * @throws IOException if the client sent a frame that is too long.
+     */
+    boolean decode(ByteBuffer in) throws IOException {
+        boolean completed;
+        if (getFraming() == Framing.LINE) {
+            completed = decoder.decodeWhile(in, line -> {
+                onMessage(line);
+                return !isSaturated();
+            });
+        } else {
+            if (binaryDecoder == null) binaryDecoder = new LengthFrameDecoder(MAX_LINE_LENGTH);
+            completed = binaryDecoder.decodeWhile(in, payload -> {
+                onFrame(payload);
+                return !isSaturated();
+            });
+        }
+        if (!completed && in.hasRemaining())
+            unread = ByteBuffer.allocate(in.remaining()).put(in).flip();
+        return completed;
+    }
+
+    /**
+     * Decode the bytes that were left over when decoding last stopped on a full event queue.
+     * Must be called on the loop thread, before anything new is read from the channel.
+     *
+     * @return false if decoding stopped again because the event queue of this connection is full.
+     * @throws IOException if the client sent a frame that is too long.
+     */
+    boolean decodeUnread() throws IOException {
+        var in = unread;
+        if (in == null) return true;
+        unread = null;
+        return decode(in);
+    }
+
+    SelectionKey getSelectionKey() {
+        return selectionKey;
+    }
+
+    void setSelectionKey(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    /**
+     * @return true if the loop stopped reading from this connection because its event queue is full.
+     */
+    boolean isReadPaused() {
+        return readPaused;
+    }
+
+    void setReadPaused(boolean readPaused) {
+        this.readPaused = readPaused;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed.get() && channel.isConnected();
+    }
+
+    @Override
+    protected void requestFlush() {
+        // The flag has to be set after the frame is queued, the loop clears it before flushing.
+        if (writeRequested.compareAndSet(false, true))
+            eventLoop.requestWrite(this);
+    }
+
+    /**
+     * Write as much of the outbound queue as the channel accepts. Must be called on the loop thread.
+     *
+     * @return true if the outbound queue was fully flushed.
+     * @throws IOException if writing to the channel failed.
+     */
+    boolean flushOutbound() throws IOException {
+        writeRequested.set(false);
+        var outbound = getOutbound();
+        while (true) {
+            if (batchOffset == batchLength) {
+                Arrays.fill(writeBatch, 0, batchLength, null);
+                batchOffset = 0;
+                batchLength = outbound.drainTo(writeBatch);
+                if (batchLength == 0) return true;
+            }
+            serverInstance.recordBytesWritten(channel.write(writeBatch, batchOffset, batchLength - batchOffset));
+            while (batchOffset < batchLength && !writeBatch[batchOffset].hasRemaining())
+                batchOffset++;
+            if (batchOffset < batchLength) return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Server.LOGGER.error("Could not properly close connection! " + e.getMessage());
+        }
+        getOutbound().clear();
+        onClosed();
+    }
+}
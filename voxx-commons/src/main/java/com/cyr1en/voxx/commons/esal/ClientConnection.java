@@ -4,47 +4,74 @@ import com.cyr1en.voxx.commons.esal.events.EventBus;
 import com.cyr1en.voxx.commons.esal.events.server.ClientDisconnectEvent;
 import com.cyr1en.voxx.commons.esal.events.server.ClientMessageEvent;
 import com.cyr1en.voxx.commons.model.User;
+import com.cyr1en.voxx.commons.protocol.JsonCodec;
+import com.cyr1en.voxx.commons.protocol.ProtocolUtil;
+import com.cyr1en.voxx.commons.protocol.WireCodec;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class ClientConnection implements Runnable {
+/**
+ * A connected client of the {@link Server}.
+ * <p>
+ * This class holds everything that is independent of how the bytes actually move through the
+ * network (associated user, connection type, remote address). The transport specific parts are
+ * implemented by {@link SocketClientConnection} (one blocking reader per socket) and
+ * {@link ChannelClientConnection} (non-blocking channel served by a shared {@link NioEventLoop}).
+ * <p>
+ * Both transports post the same {@link ClientMessageEvent} and {@link ClientDisconnectEvent}
+ * into the {@link EventBus}, so listeners don't need to know which transport is in use.
+ * When the lane of the connection is full, the blocking transport is throttled by the
+ * {@link com.cyr1en.voxx.commons.esal.events.OverflowPolicy} while the non-blocking one
+ * stops reading from the client until the lane has room again.
+ * <p>
+ * Outgoing frames never block the sender. They are put in a bounded {@link OutboundQueue} that
+ * the transport drains on its own writer, and once a client lets the queue grow beyond the
+ * high-water mark of the server, the {@link SlowConsumerPolicy} decides what happens to it.
+ */
+public abstract class ClientConnection implements AutoCloseable {
 
-    private final EventBus eventBus;
-    private final Socket clientSocket;
-    private final BufferedReader in;
-    private final PrintWriter out;
-    private boolean isRunning;
-    private User assocUser;
-    private boolean isSupplementalConnection;
-
-    private final Server serverInstance;
+    protected final EventBus eventBus;
+    protected final Server serverInstance;
     private final String remoteAddress;
+    private final OutboundQueue outbound;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final AtomicLong droppedFrames;
+    private final AtomicLong sentFrames;
+    private volatile User assocUser;
+    private volatile boolean isSupplementalConnection;
+    private volatile Framing framing;
+    private volatile WireCodec codec;
 
-    public ClientConnection(Socket clientSocket, Server serverInstance) {
-        this.clientSocket = clientSocket;
+    protected ClientConnection(Server serverInstance, String remoteAddress) {
         this.eventBus = serverInstance.getEventBus();
         this.serverInstance = serverInstance;
+        this.remoteAddress = remoteAddress;
+        this.outbound = new OutboundQueue(serverInstance.getOutboundHighWaterMark());
+        this.slowConsumerPolicy = serverInstance.getSlowConsumerPolicy();
+        this.droppedFrames = new AtomicLong();
+        this.sentFrames = new AtomicLong();
         isSupplementalConnection = false;
-        try {
-            this.clientSocket.setSoTimeout(0);
-            this.clientSocket.setKeepAlive(true);
-            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            out = new PrintWriter(clientSocket.getOutputStream(), true);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        isRunning = false;
-        this.remoteAddress = clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
+        framing = Framing.LINE;
+        codec = JsonCodec.INSTANCE;
     }
 
     public void setAssocUser(@NotNull User user) {
         this.assocUser = user;
+        serverInstance.getClientConnections().reindex(this);
+    }
+
+    /**
+     * Detach this connection from its user, e.g. when the user's session moved to another connection.
+     * The connection is removed from the user's index, and handlers that run when it closes no longer
+     * see the user.
+     */
+    public void clearAssocUser() {
+        this.assocUser = null;
+        serverInstance.getClientConnections().reindex(this);
     }
 
     @Nullable
@@ -56,72 +83,175 @@ public class ClientConnection implements Runnable {
         return remoteAddress;
     }
 
-    public Socket getClientSocket() {
-        return clientSocket;
+    public void setSupplementalConnection(boolean b) {
+        this.isSupplementalConnection = b;
+        serverInstance.getClientConnections().reindex(this);
     }
 
-    public BufferedReader getIn() {
-        return in;
+    public boolean isSupplementalConnection() {
+        return isSupplementalConnection;
     }
 
-    public PrintWriter getOut() {
-        return out;
+    /**
+     * Change how the following input of the client is split into frames. Bytes that were already
+     * read are still decoded with the old framing, so this should only be changed while the client
+     * waits for an answer, like during a handshake. Usually this is done by the transport when the
+     * client sends the {@link Server#setFramingUpgrade(String) framing upgrade} line.
+     *
+     * @param framing the new {@link Framing}.
+     */
+    public void setFraming(Framing framing) {
+        this.framing = framing;
     }
 
-    public boolean isRunning() {
-        return isRunning;
+    public Framing getFraming() {
+        return framing;
     }
 
-    public boolean isConnected() {
-        return clientSocket.isConnected();
+    /**
+     * Set the codec used to encode responses and updates for this client.
+     *
+     * @param codec the {@link WireCodec} the client negotiated.
+     */
+    public void setCodec(WireCodec codec) {
+        this.codec = codec;
     }
 
-    public void setSupplementalConnection(boolean b) {
-        this.isSupplementalConnection = b;
+    public WireCodec getCodec() {
+        return codec;
     }
 
-    public boolean isSupplementalConnection() {
-        return isSupplementalConnection;
+    /**
+     * Send a JSON message to the client. Messages that span multiple lines are compacted into one line.
+     *
+     * @param message JSON message to send.
+     */
+    public void sendMessage(String message) {
+        write(ProtocolUtil.compact(message));
     }
 
-    public void sendMessage(String message) {
-        var cleaned = message.replaceAll("\\s{2,}|\\n", "");
-        out.println(cleaned);
-    }
-
-    public void close() {
-        try {
-            if (!clientSocket.isClosed()) {
-                in.close();
-                out.close();
-                clientSocket.close();
-                serverInstance.getClientConnections().remove(this);
-                eventBus.post(new ClientDisconnectEvent(this));
-                isRunning = false;
+    /**
+     * Send a frame that was already encoded with {@link #encodeFrame(String)}.
+     * <p>
+     * The frame is not consumed, so the same buffer can be sent to many connections. This is what
+     * broadcasts use to serialize their payload once for all recipients.
+     *
+     * @param frame encoded frame including its line terminator.
+     */
+    public void sendFrame(ByteBuffer frame) {
+        writeFrame(frame.duplicate());
+    }
+
+    /**
+     * Encode a line into a frame that can be sent with {@link #sendFrame(ByteBuffer)}.
+     *
+     * @param line line without a line terminator.
+     * @return a read-only buffer with the UTF-8 bytes of the line followed by {@code '\n'}.
+     */
+    public static ByteBuffer encodeFrame(String line) {
+        var bytes = (line + '\n').getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Write a single line to the client.
+     *
+     * @param line line to send without its line terminator.
+     */
+    protected void write(String line) {
+        writeFrame(encodeFrame(line));
+    }
+
+    /**
+     * Queue an encoded frame for the client. The buffer belongs to the transport after this call.
+     *
+     * @param frame frame to write.
+     */
+    protected void writeFrame(ByteBuffer frame) {
+        if (!isConnected()) return;
+        if (outbound.offer(frame)) {
+            sentFrames.incrementAndGet();
+            requestFlush();
+            return;
+        }
+        switch (slowConsumerPolicy) {
+            case DROP -> {
+                if (droppedFrames.getAndIncrement() == 0)
+                    Server.LOGGER.warn(String.format("Client (%s) is too slow, dropping frames", remoteAddress));
+            }
+            case DISCONNECT -> {
+                Server.LOGGER.warn(String.format("Client (%s) is too slow, disconnecting", remoteAddress));
+                close();
             }
-        } catch (IOException e) {
-            Server.LOGGER.error("Could not properly close connection! " + e.getMessage());
         }
     }
 
+    /**
+     * Ask the transport to drain the outbound queue. Called after every queued frame.
+     */
+    protected abstract void requestFlush();
+
+    OutboundQueue getOutbound() {
+        return outbound;
+    }
+
+    /**
+     * @return amount of frames that were dropped because the client didn't read them fast enough.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * @return amount of frames that were queued for the client, dropped frames are not counted.
+     */
+    public long getSentFrames() {
+        return sentFrames.get();
+    }
+
+    public abstract boolean isConnected();
+
+    @Override
+    public abstract void close();
+
+    /**
+     * @return true if the events of this connection can't be queued right now without overflowing.
+     */
+    protected boolean isSaturated() {
+        return eventBus.isSaturated(this);
+    }
+
     @Override
-    public void run() {
-        if (isRunning) {
-            Server.LOGGER.warn("This client runnable is already running!");
-            return;
-        }
+    public String toString() {
+        return "ClientConnection(" + remoteAddress + ")";
+    }
 
-        isRunning = true;
+    /**
+     * Called by the transport for every complete line it reads from the client.
+     *
+     * @param line the line that was read without its line terminator.
+     */
+    protected void onMessage(String line) {
+        if (line.equals(serverInstance.getFramingUpgrade()))
+            setFraming(Framing.LENGTH_PREFIXED);
+        eventBus.post(new ClientMessageEvent(this, line));
+    }
 
-        try {
-            String inLine;
-            while ((inLine = in.readLine()) != null && isConnected())
-                eventBus.post(new ClientMessageEvent(this, inLine));
-            close();
-        } catch (IOException e) {
-            Server.LOGGER.error(e.getMessage());
-            close();
-        }
+    /**
+     * Called by the transport for every complete frame it reads while the framing is
+     * {@link Framing#LENGTH_PREFIXED}.
+     *
+     * @param payload the payload of the frame without its length prefix.
+     */
+    protected void onFrame(byte[] payload) {
+        eventBus.post(new ClientMessageEvent(this, payload));
+    }
 
+    /**
+     * Called by the transport exactly once after the underlying connection was closed.
+     */
+    protected void onClosed() {
+        serverInstance.getClientConnections().remove(this);
+        eventBus.post(new ClientDisconnectEvent(this));
     }
 }
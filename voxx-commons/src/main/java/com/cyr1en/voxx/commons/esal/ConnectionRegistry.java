@@ -0,0 +1,195 @@
+package com.cyr1en.voxx.commons.esal;
+
+import com.cyr1en.voxx.commons.model.User;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The open client connections of a {@link Server}, indexed by associated user, by connection type
+ * (primary or supplemental) and by remote host.
+ * <p>
+ * Adding and removing a connection is O(1) and never blocks other connections, the sets are backed
+ * by {@link ConcurrentHashMap}s. Iterating a view is weakly consistent: it never throws
+ * {@link java.util.ConcurrentModificationException} and sees every connection that stayed open while
+ * iterating, which is what a fan-out needs.
+ * <p>
+ * A connection updates its own index entries when its user or type changes, see
+ * {@link ClientConnection#setAssocUser(User)}, {@link ClientConnection#clearAssocUser()} and
+ * {@link ClientConnection#setSupplementalConnection(boolean)}.
+ * The index is always rebuilt from the current state of the connection, so concurrent changes
+ * can't leave a connection indexed under a stale key.
+ */
+public class ConnectionRegistry {
+
+    private final ConcurrentHashMap<ClientConnection, IndexKeys> connections;
+    private final ConcurrentHashMap<User, Set<ClientConnection>> byUser;
+    private final ConcurrentHashMap<String, Set<ClientConnection>> byHost;
+    private final Set<ClientConnection> primary;
+    private final Set<ClientConnection> supplemental;
+
+    /**
+     * The keys a connection is currently indexed under.
+     */
+    private record IndexKeys(User user, boolean supplemental, String host) {
+        static IndexKeys of(ClientConnection connection) {
+            return new IndexKeys(connection.getAssocUser(), connection.isSupplementalConnection(),
+                    hostOf(connection.getRemoteAddress()));
+        }
+    }
+
+    public ConnectionRegistry() {
+        this.connections = new ConcurrentHashMap<>();
+        this.byUser = new ConcurrentHashMap<>();
+        this.byHost = new ConcurrentHashMap<>();
+        this.primary = ConcurrentHashMap.newKeySet();
+        this.supplemental = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Add a connection. Adding a connection twice has no effect, and neither has adding a connection
+     * that is already closed: a client can disconnect before the server gets to add it, and its
+     * {@link #remove(ClientConnection)} has already happened by then.
+     *
+     * @param connection the connection to add.
+     * @return true if the connection was added.
+     */
+    public boolean add(ClientConnection connection) {
+        synchronized (connection) {
+            // Checked under the lock that remove takes, so a close either happens before this
+            // check or its remove waits for the add to finish.
+            if (!connection.isConnected()) return false;
+            var keys = IndexKeys.of(connection);
+            if (connections.putIfAbsent(connection, keys) != null) return false;
+            index(connection, keys);
+            return true;
+        }
+    }
+
+    /**
+     * Remove a connection from the registry and all of its indexes.
+     *
+     * @param connection the connection to remove.
+     * @return true if the connection was in the registry.
+     */
+    public boolean remove(ClientConnection connection) {
+        synchronized (connection) {
+            var keys = connections.remove(connection);
+            if (keys == null) return false;
+            unindex(connection, keys);
+            return true;
+        }
+    }
+
+    /**
+     * Move a connection to the indexes that match its current user and type. Does nothing if the
+     * connection isn't registered (yet), {@link #add(ClientConnection)} indexes it then.
+     *
+     * @param connection the connection that changed.
+     */
+    void reindex(ClientConnection connection) {
+        synchronized (connection) {
+            var old = connections.get(connection);
+            if (old == null) return;
+            var keys = IndexKeys.of(connection);
+            if (keys.equals(old)) return;
+            unindex(connection, old);
+            connections.put(connection, keys);
+            index(connection, keys);
+        }
+    }
+
+    public boolean contains(ClientConnection connection) {
+        return connections.containsKey(connection);
+    }
+
+    /**
+     * @return live view of all connections.
+     */
+    public Collection<ClientConnection> getAll() {
+        return Collections.unmodifiableSet(connections.keySet());
+    }
+
+    /**
+     * @return view of the connections associated with a user, empty if there are none. The view stops
+     * updating once the last of them was removed.
+     */
+    public Collection<ClientConnection> getByUser(User user) {
+        return view(byUser.get(user));
+    }
+
+    /**
+     * @return live view of the primary connections, the ones clients send their requests on.
+     */
+    public Collection<ClientConnection> getPrimary() {
+        return Collections.unmodifiableSet(primary);
+    }
+
+    /**
+     * @return live view of the supplemental (update) connections.
+     */
+    public Collection<ClientConnection> getSupplemental() {
+        return Collections.unmodifiableSet(supplemental);
+    }
+
+    /**
+     * @param host IP address of the remote host, without a port.
+     * @return view of the connections from that host, empty if there are none. The view stops updating
+     * once the last of them was removed.
+     */
+    public Collection<ClientConnection> getByHost(String host) {
+        return view(byHost.get(host));
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    public boolean isEmpty() {
+        return connections.isEmpty();
+    }
+
+    private void index(ClientConnection connection, IndexKeys keys) {
+        if (keys.user() != null) addTo(byUser, keys.user(), connection);
+        addTo(byHost, keys.host(), connection);
+        (keys.supplemental() ? supplemental : primary).add(connection);
+    }
+
+    private void unindex(ClientConnection connection, IndexKeys keys) {
+        if (keys.user() != null) removeFrom(byUser, keys.user(), connection);
+        removeFrom(byHost, keys.host(), connection);
+        (keys.supplemental() ? supplemental : primary).remove(connection);
+    }
+
+    private static <K> void addTo(ConcurrentHashMap<K, Set<ClientConnection>> index, K key,
+                                  ClientConnection connection) {
+        index.compute(key, (k, set) -> {
+            if (set == null) set = ConcurrentHashMap.newKeySet();
+            set.add(connection);
+            return set;
+        });
+    }
+
+    /**
+     * Remove a connection from an index set, and the set from the index once it is empty. Adding and removing
+     * both happen inside {@code compute}, so a concurrent add to the same key can't end up in a dropped set.
+     */
+    private static <K> void removeFrom(ConcurrentHashMap<K, Set<ClientConnection>> index, K key,
+                                       ClientConnection connection) {
+        index.computeIfPresent(key, (k, set) -> {
+            set.remove(connection);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static Collection<ClientConnection> view(Set<ClientConnection> set) {
+        return set == null ? Collections.emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    private static String hostOf(String remoteAddress) {
+        var colon = remoteAddress.lastIndexOf(':');
+        return colon < 0 ? remoteAddress : remoteAddress.substring(0, colon);
+    }
+}
@@ -0,0 +1,15 @@
+package com.cyr1en.voxx.commons.esal;
+
+/**
+ * How the bytes a client sends are split into frames.
+ */
+public enum Framing {
+    /**
+     * Newline-delimited UTF-8 lines, see {@link LineFrameDecoder}.
+     */
+    LINE,
+    /**
+     * Frames prefixed with their varint encoded length, see {@link LengthFrameDecoder}.
+     */
+    LENGTH_PREFIXED
+}
@@ -0,0 +1,113 @@
+package com.cyr1en.voxx.commons.esal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Incremental decoder for frames that are prefixed with their length.
+ * <p>
+ * The length is an unsigned varint (7 bits per byte, least significant group first, high bit set on
+ * every byte but the last) followed by that amount of payload bytes. Like {@link LineFrameDecoder},
+ * the bytes of an incomplete frame are kept until the rest of it arrives.
+ * <p>
+ * An instance holds per-connection state and must only be used by one thread at a time.
+ */
+public class LengthFrameDecoder {
+
+    private final int maxFrameLength;
+    private int length;
+    private int lengthShift;
+    private byte[] payload;
+    private int payloadLength;
+
+    /**
+     * @param maxFrameLength maximum amount of bytes a single frame may have before the
+     *                       connection is considered misbehaving.
+     */
+    public LengthFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * Consume all the remaining bytes of the buffer and pass the payload of every complete frame to the consumer.
+     *
+     * @param in      bytes that were read from the connection.
+     * @param onFrame consumer for every complete payload.
+     * @throws IOException if a frame exceeds the maximum frame length.
+     */
+    public void decode(ByteBuffer in, Consumer<byte[]> onFrame) throws IOException {
+        decodeWhile(in, frame -> {
+            onFrame.accept(frame);
+            return true;
+        });
+    }
+
+    /**
+     * Pass the payload of every complete frame of the buffer to the callback until it returns false. The
+     * bytes after the frame that stopped decoding stay in the buffer, so the caller can decode them later.
+     *
+     * @param in      bytes that were read from the connection.
+     * @param onFrame callback for every complete payload, returns false to stop decoding.
+     * @return false if decoding was stopped by the callback, true if all bytes were consumed.
+     * @throws IOException if a frame exceeds the maximum frame length.
+     */
+    public boolean decodeWhile(ByteBuffer in, Predicate<byte[]> onFrame) throws IOException {
+        while (in.hasRemaining()) {
+            if (payload == null) {
+                var b = in.get();
+                length |= (b & 0x7F) << lengthShift;
+                lengthShift += 7;
+                if ((b & 0x80) != 0) {
+                    if (lengthShift > 28) throw new IOException("Malformed frame length");
+                    continue;
+                }
+                if (length > maxFrameLength)
+                    throw new IOException(String.format("Frame exceeds %d bytes", maxFrameLength));
+                payload = new byte[length];
+                payloadLength = 0;
+            }
+            var count = Math.min(in.remaining(), payload.length - payloadLength);
+            in.get(payload, payloadLength, count);
+            payloadLength += count;
+            if (payloadLength == payload.length) {
+                var frame = payload;
+                payload = null;
+                length = 0;
+                lengthShift = 0;
+                if (!onFrame.test(frame)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read one frame from a blocking stream.
+     *
+     * @param in             stream to read from.
+     * @param maxFrameLength maximum amount of bytes the frame may have.
+     * @return the payload of the frame, or null if the stream ended before a new frame started.
+     * @throws IOException if reading failed, the stream ended inside a frame or the frame is too long.
+     */
+    public static byte[] readFrame(InputStream in, int maxFrameLength) throws IOException {
+        var length = 0;
+        for (int shift = 0; ; shift += 7) {
+            var b = in.read();
+            if (b == -1) {
+                if (shift == 0) return null;
+                throw new EOFException();
+            }
+            if (shift > 28) throw new IOException("Malformed frame length");
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+        }
+        if (length > maxFrameLength)
+            throw new IOException(String.format("Frame exceeds %d bytes", maxFrameLength));
+        var payload = in.readNBytes(length);
+        if (payload.length != length) throw new EOFException();
+        return payload;
+    }
+}
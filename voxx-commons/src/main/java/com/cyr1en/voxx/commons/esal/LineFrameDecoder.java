@@ -0,0 +1,96 @@
+package com.cyr1en.voxx.commons.esal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Incremental decoder that splits a byte stream into newline-delimited UTF-8 lines.
+ * <p>
+ * Non-blocking reads can end anywhere, even in the middle of a multibyte character, so the
+ * bytes of an incomplete line are kept until its terminating {@code '\n'} arrives. A trailing
+ * {@code '\r'} is stripped so that {@code "\r\n"} terminated lines decode the same way
+ * {@link java.io.BufferedReader#readLine()} would.
+ * <p>
+ * An instance holds per-connection state and must only be used by one thread at a time.
+ */
+public class LineFrameDecoder {
+
+    private final int maxLineLength;
+    private byte[] pending;
+    private int pendingLength;
+
+    /**
+     * @param maxLineLength maximum amount of bytes a single line may have before the
+     *                      connection is considered misbehaving.
+     */
+    public LineFrameDecoder(int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+        this.pending = new byte[256];
+        this.pendingLength = 0;
+    }
+
+    /**
+     * Consume all the remaining bytes of the buffer and pass every complete line to the consumer.
+     *
+     * @param in      bytes that were read from the connection.
+     * @param onFrame consumer for every complete line.
+     * @throws IOException if a line exceeds the maximum line length.
+     */
+    public void decode(ByteBuffer in, Consumer<String> onFrame) throws IOException {
+        decodeWhile(in, line -> {
+            onFrame.accept(line);
+            return true;
+        });
+    }
+
+    /**
+     * Pass every complete line of the buffer to the callback until it returns false. The bytes after the
+     * line that stopped decoding stay in the buffer, so the caller can decode them later.
+     *
+     * @param in      bytes that were read from the connection.
+     * @param onFrame callback for every complete line, returns false to stop decoding.
+     * @return false if decoding was stopped by the callback, true if all bytes were consumed.
+     * @throws IOException if a line exceeds the maximum line length.
+     */
+    public boolean decodeWhile(ByteBuffer in, Predicate<String> onFrame) throws IOException {
+        while (in.hasRemaining()) {
+            var start = in.position();
+            var limit = in.limit();
+            var newline = -1;
+            for (var i = start; i < limit; i++) {
+                if (in.get(i) == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+
+            var end = newline == -1 ? limit : newline;
+            append(in, start, end - start);
+            in.position(newline == -1 ? limit : newline + 1);
+
+            if (newline != -1) {
+                var length = pendingLength;
+                if (length > 0 && pending[length - 1] == '\r') length--;
+                var line = new String(pending, 0, length, StandardCharsets.UTF_8);
+                pendingLength = 0;
+                if (!onFrame.test(line)) return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(ByteBuffer in, int offset, int length) throws IOException {
+        if (length == 0) return;
+        var required = pendingLength + length;
+        if (required > maxLineLength)
+            throw new IOException(String.format("Line exceeds %d bytes", maxLineLength));
+        if (required > pending.length)
+            pending = Arrays.copyOf(pending, Math.min(maxLineLength, Math.max(required, pending.length * 2)));
+        in.get(offset, pending, pendingLength, length);
+        pendingLength = required;
+    }
+}
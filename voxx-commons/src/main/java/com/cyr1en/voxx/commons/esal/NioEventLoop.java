@@ -0,0 +1,211 @@
+package com.cyr1en.voxx.commons.esal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single threaded I/O loop that serves many {@link ChannelClientConnection}s through one {@link Selector}.
+ * <p>
+ * The {@link Server} creates a small fixed amount of these loops when it runs with {@link Server.Transport#NIO}
+ * and hands every accepted channel to one of them. Everything that touches the selector (registering
+ * channels, changing interest ops) happens on the loop thread; other threads only enqueue work and
+ * wake the selector up.
+ */
+class NioEventLoop implements Runnable {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    // How often connections that were paused because of a full event queue are checked again.
+    private static final long PAUSED_POLL_MILLIS = 10;
+
+    private final Selector selector;
+    private final Queue<ChannelClientConnection> pendingRegistrations;
+    private final Queue<ChannelClientConnection> pendingWrites;
+    private final List<ChannelClientConnection> pausedReads;
+    private final ByteBuffer readBuffer;
+    private volatile boolean running;
+
+    NioEventLoop() throws IOException {
+        this.selector = Selector.open();
+        this.pendingRegistrations = new ConcurrentLinkedQueue<>();
+        this.pendingWrites = new ConcurrentLinkedQueue<>();
+        this.pausedReads = new ArrayList<>();
+        this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        this.running = false;
+    }
+
+    /**
+     * Register a connection to this loop. The connection will start being read on the loop thread.
+     *
+     * @param connection connection to register.
+     */
+    void register(ChannelClientConnection connection) {
+        pendingRegistrations.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Ask the loop to flush the outbound queue of the connection.
+     *
+     * @param connection connection with pending outbound data.
+     */
+    void requestWrite(ChannelClientConnection connection) {
+        pendingWrites.add(connection);
+        selector.wakeup();
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        running = true;
+        try {
+            while (running) {
+                if (pausedReads.isEmpty()) selector.select();
+                else selector.select(PAUSED_POLL_MILLIS);
+                processRegistrations();
+                processWrites();
+                resumeReads();
+
+                var selectedKeys = selector.selectedKeys();
+                for (var key : selectedKeys) {
+                    var connection = (ChannelClientConnection) key.attachment();
+                    if (!key.isValid()) {
+                        connection.close();
+                        continue;
+                    }
+                    try {
+                        if (key.isReadable()) read(connection);
+                        if (key.isValid() && key.isWritable()) flush(connection);
+                    } catch (CancelledKeyException e) {
+                        // Another thread closed the connection since the key was selected.
+                        connection.close();
+                    }
+                }
+                selectedKeys.clear();
+            }
+        } catch (IOException e) {
+            Server.LOGGER.error("I/O event loop failed: " + e.getMessage());
+        } finally {
+            selector.keys().forEach(key -> ((ChannelClientConnection) key.attachment()).close());
+            try {
+                selector.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private void processRegistrations() {
+        ChannelClientConnection connection;
+        while ((connection = pendingRegistrations.poll()) != null) {
+            try {
+                var key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+                connection.setSelectionKey(key);
+            } catch (ClosedChannelException e) {
+                connection.close();
+            }
+        }
+    }
+
+    private void processWrites() {
+        ChannelClientConnection connection;
+        while ((connection = pendingWrites.poll()) != null)
+            flush(connection);
+    }
+
+    private void read(ChannelClientConnection connection) {
+        // Bytes left over from the last read have to be decoded before anything new is read.
+        if (connection.isReadPaused()) return;
+        if (connection.isSaturated()) {
+            pauseRead(connection);
+            return;
+        }
+        try {
+            readBuffer.clear();
+            var read = connection.getChannel().read(readBuffer);
+            if (read == -1) {
+                connection.close();
+                return;
+            }
+            readBuffer.flip();
+            if (!connection.decode(readBuffer)) pauseRead(connection);
+        } catch (IOException e) {
+            Server.LOGGER.error(e.getMessage());
+            connection.close();
+        }
+    }
+
+    /**
+     * Stop reading from a connection whose event queue is full. The client's data stays in the socket
+     * buffers, so the client is throttled by TCP flow control instead of the server queueing more.
+     */
+    private void pauseRead(ChannelClientConnection connection) {
+        if (connection.isReadPaused()) return;
+        connection.setReadPaused(true);
+        pausedReads.add(connection);
+        var key = connection.getSelectionKey();
+        try {
+            if (key != null && key.isValid()) key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        } catch (CancelledKeyException e) {
+            connection.close();
+        }
+    }
+
+    private void resumeReads() {
+        if (pausedReads.isEmpty()) return;
+        var iterator = pausedReads.iterator();
+        while (iterator.hasNext()) {
+            var connection = iterator.next();
+            var key = connection.getSelectionKey();
+            if (key == null || !key.isValid()) {
+                iterator.remove();
+            } else if (!connection.isSaturated()) {
+                try {
+                    if (!connection.decodeUnread()) continue;
+                } catch (IOException e) {
+                    Server.LOGGER.error(e.getMessage());
+                    iterator.remove();
+                    connection.close();
+                    continue;
+                }
+                connection.setReadPaused(false);
+                iterator.remove();
+                try {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                } catch (CancelledKeyException e) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    private void updateInterest(ChannelClientConnection connection, boolean flushed) {
+        var key = connection.getSelectionKey();
+        var ops = (connection.isReadPaused() ? 0 : SelectionKey.OP_READ) | (flushed ? 0 : SelectionKey.OP_WRITE);
+        key.interestOps(ops);
+    }
+
+    private void flush(ChannelClientConnection connection) {
+        var key = connection.getSelectionKey();
+        if (key == null || !key.isValid()) return;
+        try {
+            var flushed = connection.flushOutbound();
+            updateInterest(connection, flushed);
+        } catch (IOException e) {
+            Server.LOGGER.error(e.getMessage());
+            connection.close();
+        } catch (CancelledKeyException e) {
+            connection.close();
+        }
+    }
+}
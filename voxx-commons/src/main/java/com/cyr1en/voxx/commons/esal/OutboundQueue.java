@@ -0,0 +1,75 @@
+package com.cyr1en.voxx.commons.esal;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frames waiting to be written to a client, bounded by the amount of queued bytes.
+ * <p>
+ * Any thread can offer frames, but only the single writer of the connection drains them. The
+ * writer takes frames out in batches so that several small frames go out with one flush.
+ */
+class OutboundQueue {
+
+    private final Queue<ByteBuffer> frames;
+    private final AtomicLong queuedBytes;
+    private final long highWaterMark;
+
+    OutboundQueue(long highWaterMark) {
+        this.frames = new ConcurrentLinkedQueue<>();
+        this.queuedBytes = new AtomicLong();
+        this.highWaterMark = highWaterMark;
+    }
+
+    /**
+     * Queue a frame unless that would put the queue above its high-water mark.
+     * An empty queue always accepts a frame, so a single large frame can't get stuck.
+     *
+     * @param frame frame to queue.
+     * @return false if the frame was not queued.
+     */
+    boolean offer(ByteBuffer frame) {
+        var size = frame.remaining();
+        var current = queuedBytes.getAndAdd(size);
+        if (current > 0 && current + size > highWaterMark) {
+            queuedBytes.getAndAdd(-size);
+            return false;
+        }
+        frames.add(frame);
+        return true;
+    }
+
+    /**
+     * Move queued frames into the batch, starting at index 0.
+     *
+     * @param batch array to fill.
+     * @return the amount of frames moved.
+     */
+    int drainTo(ByteBuffer[] batch) {
+        var count = 0;
+        var bytes = 0L;
+        ByteBuffer frame;
+        while (count < batch.length && (frame = frames.poll()) != null) {
+            batch[count++] = frame;
+            bytes += frame.remaining();
+        }
+        if (bytes > 0) queuedBytes.getAndAdd(-bytes);
+        return count;
+    }
+
+    boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    void clear() {
+        ByteBuffer frame;
+        while ((frame = frames.poll()) != null)
+            queuedBytes.getAndAdd(-frame.remaining());
+    }
+}
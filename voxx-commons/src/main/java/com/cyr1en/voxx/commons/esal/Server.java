@@ -6,11 +6,13 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.util.ArrayList;
+import java.nio.channels.ServerSocketChannel;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Server implements Runnable {
 
@@ -19,53 +21,245 @@ public class Server implements Runnable {
     private final int port;
     private final int backlog;
     private final EventBus eventBus;
-    private final ArrayList<ClientConnection> clientConnections;
+    private final ConnectionRegistry clientConnections;
+    private final LongAdder acceptedConnections;
+    private final LongAdder bytesWritten;
+    private Transport transport;
+    private ThreadMode threadMode;
+    private int ioThreads;
+    private long outboundHighWaterMark;
+    private SlowConsumerPolicy slowConsumerPolicy;
+    private ExecutorService writerExecutor;
+    private String framingUpgrade;
 
     public Server(int port, int backlog) {
         this.port = port;
         this.backlog = backlog; //Incoming Connection Queue size
         this.eventBus = new EventBus();
-        clientConnections = new ArrayList<>();
+        clientConnections = new ConnectionRegistry();
+        acceptedConnections = new LongAdder();
+        bytesWritten = new LongAdder();
+        transport = Transport.BLOCKING;
+        threadMode = ThreadMode.PLATFORM;
+        ioThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        outboundHighWaterMark = 4 * 1024 * 1024;
+        slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
     }
 
     public EventBus getEventBus() {
         return eventBus;
     }
 
-    public ArrayList<ClientConnection> getClientConnections() {
+    /**
+     * @return the open client connections. Connections are added once their {@link ClientConnectEvent}
+     * was handled and removed when they close.
+     */
+    public ConnectionRegistry getClientConnections() {
         return clientConnections;
     }
 
+    /**
+     * @return amount of client connections that were accepted since the server started.
+     */
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    /**
+     * @return amount of bytes written to all clients since the server started.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Called by the transports after they wrote to a client.
+     */
+    void recordBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    /**
+     * Set how client connections are served. This has to be set before the server starts running.
+     *
+     * @param transport the {@link Transport} to use.
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Set which kind of threads run the blocking client readers. This has to be set before the server
+     * starts running.
+     *
+     * @param threadMode the {@link ThreadMode} to use.
+     */
+    public void setThreadMode(ThreadMode threadMode) {
+        this.threadMode = threadMode;
+    }
+
+    public ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Set the amount of I/O event loops used by {@link Transport#NIO}.
+     *
+     * @param ioThreads amount of event loop threads, must be at least 1.
+     */
+    public void setIoThreads(int ioThreads) {
+        if (ioThreads < 1) throw new IllegalArgumentException("ioThreads must be at least 1");
+        this.ioThreads = ioThreads;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Set how many bytes may wait in the outbound queue of a client before the {@link SlowConsumerPolicy}
+     * applies. This has to be set before the server starts running.
+     *
+     * @param outboundHighWaterMark high-water mark in bytes, must be positive.
+     */
+    public void setOutboundHighWaterMark(long outboundHighWaterMark) {
+        if (outboundHighWaterMark < 1) throw new IllegalArgumentException("outboundHighWaterMark must be positive");
+        this.outboundHighWaterMark = outboundHighWaterMark;
+    }
+
+    public long getOutboundHighWaterMark() {
+        return outboundHighWaterMark;
+    }
+
+    /**
+     * Set what happens to clients that don't read their messages fast enough. This has to be set
+     * before the server starts running.
+     *
+     * @param slowConsumerPolicy the {@link SlowConsumerPolicy} to use.
+     */
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    /**
+     * Set the line a client sends to switch its input to {@link Framing#LENGTH_PREFIXED}. The switch
+     * happens on the reading thread before the next read, the line itself is still posted as a
+     * message so listeners can answer the handshake.
+     *
+     * @param framingUpgrade the line that upgrades the framing, or null to disable upgrades.
+     */
+    public void setFramingUpgrade(String framingUpgrade) {
+        this.framingUpgrade = framingUpgrade;
+    }
+
+    public String getFramingUpgrade() {
+        return framingUpgrade;
+    }
+
+    ExecutorService getWriterExecutor() {
+        return writerExecutor;
+    }
+
     @Override
     public void run() {
+        switch (transport) {
+            case BLOCKING -> runBlocking();
+            case NIO -> runNonBlocking();
+        }
+    }
+
+    private void runBlocking() {
         ServerSocket serverSocket = null;
-        var executors = new ArrayList<ExecutorService>();
+        var readerExecutor = threadMode.newExecutor("esal-client-");
+        writerExecutor = threadMode.newExecutor("esal-writer-");
         try {
             serverSocket = new ServerSocket(port, backlog);
             serverSocket.setSoTimeout(0);
 
-            LOGGER.info("Server abstraction layer started");
+            LOGGER.info(String.format("Server abstraction layer started (%s threads)", threadMode));
 
             while (true) {
                 var clientSocket = serverSocket.accept();
-                var executorService = Executors.newSingleThreadExecutor();
-                var clientConnection = new ClientConnection(clientSocket, this);
+                var clientConnection = new SocketClientConnection(clientSocket, this);
+                acceptedConnections.increment();
                 LOGGER.info(String.format("New client (%s)", clientConnection.getRemoteAddress()));
                 eventBus.post(new ClientConnectEvent(clientConnection), () -> clientConnections.add(clientConnection));
-                executorService.execute(clientConnection);
-                executors.add(executorService);
+                readerExecutor.execute(clientConnection);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
             if (Objects.nonNull(serverSocket)) {
                 try {
-                    clientConnections.forEach(ClientConnection::close);
+                    List.copyOf(clientConnections.getAll()).forEach(ClientConnection::close);
                     serverSocket.close();
                 } catch (IOException ignore) {
                 }
             }
-            executors.forEach(ExecutorService::shutdown);
+            readerExecutor.shutdown();
+            writerExecutor.shutdown();
+        }
+    }
+
+    private void runNonBlocking() {
+        var eventLoops = new NioEventLoop[ioThreads];
+        try (var serverChannel = ServerSocketChannel.open()) {
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new NioEventLoop();
+                var thread = new Thread(eventLoops[i], "esal-io-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            serverChannel.bind(new InetSocketAddress(port), backlog);
+            LOGGER.info(String.format("Server abstraction layer started (NIO, %d event loops)", eventLoops.length));
+
+            var next = 0;
+            while (true) {
+                var channel = serverChannel.accept();
+                var eventLoop = eventLoops[next];
+                next = (next + 1) % eventLoops.length;
+                ChannelClientConnection clientConnection;
+                try {
+                    clientConnection = new ChannelClientConnection(channel, this, eventLoop);
+                } catch (IOException e) {
+                    LOGGER.error("Could not set up client channel: " + e.getMessage());
+                    channel.close();
+                    continue;
+                }
+                acceptedConnections.increment();
+                LOGGER.info(String.format("New client (%s)", clientConnection.getRemoteAddress()));
+                eventBus.post(new ClientConnectEvent(clientConnection), () -> clientConnections.add(clientConnection));
+                eventLoop.register(clientConnection);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            List.copyOf(clientConnections.getAll()).forEach(ClientConnection::close);
+            for (var eventLoop : eventLoops)
+                if (Objects.nonNull(eventLoop)) eventLoop.shutdown();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * How the server accepts and serves client connections.
+     */
+    public enum Transport {
+        /**
+         * Every client gets its own thread that blocks while reading from its socket.
+         */
+        BLOCKING,
+        /**
+         * Clients are multiplexed on a small fixed set of selector based I/O event loops.
+         */
+        NIO
+    }
+}
@@ -0,0 +1,16 @@
+package com.cyr1en.voxx.commons.esal;
+
+/**
+ * What a {@link ClientConnection} does when its outbound queue reached the high-water mark because
+ * the client doesn't read fast enough.
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * Drop the frames that don't fit into the queue. The client misses them but stays connected.
+     */
+    DROP,
+    /**
+     * Close the connection of the client.
+     */
+    DISCONNECT
+}
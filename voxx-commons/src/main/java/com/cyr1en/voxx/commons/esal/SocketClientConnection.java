@@ -0,0 +1,177 @@
+package com.cyr1en.voxx.commons.esal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Blocking {@link ClientConnection} that dedicates one thread to read from its {@link Socket}.
+ * <p>
+ * Writes are done by a task on the writer executor of the {@link Server}, which is only scheduled
+ * while the connection has queued frames. The task drains the queue in batches, copies the frames
+ * into one reusable write buffer and writes it out once per batch (or whenever it fills up), so a
+ * client that stopped reading only blocks its own writer.
+ */
+public class SocketClientConnection extends ClientConnection implements Runnable {
+
+    private static final int WRITE_BATCH_SIZE = 64;
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    private final Socket clientSocket;
+    private final BufferedReader in;
+    private final OutputStream out;
+    private final ByteBuffer[] writeBatch;
+    private final byte[] writeBuffer;
+    private int buffered;
+    private final AtomicBoolean flushScheduled;
+    private final AtomicBoolean closed;
+    private boolean isRunning;
+
+    public SocketClientConnection(Socket clientSocket, Server serverInstance) {
+        super(serverInstance, clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort());
+        this.clientSocket = clientSocket;
+        try {
+            this.clientSocket.setSoTimeout(0);
+            this.clientSocket.setKeepAlive(true);
+            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream(), StandardCharsets.UTF_8));
+            out = clientSocket.getOutputStream();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        writeBatch = new ByteBuffer[WRITE_BATCH_SIZE];
+        writeBuffer = new byte[WRITE_BUFFER_SIZE];
+        flushScheduled = new AtomicBoolean(false);
+        closed = new AtomicBoolean(false);
+        isRunning = false;
+    }
+
+    public Socket getClientSocket() {
+        return clientSocket;
+    }
+
+    public BufferedReader getIn() {
+        return in;
+    }
+
+    public OutputStream getOut() {
+        return out;
+    }
+
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !closed.get() && clientSocket.isConnected();
+    }
+
+    @Override
+    protected void requestFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) return;
+        try {
+            serverInstance.getWriterExecutor().execute(this::drainOutbound);
+        } catch (RejectedExecutionException e) {
+            flushScheduled.set(false);
+            close();
+        }
+    }
+
+    private void drainOutbound() {
+        var outbound = getOutbound();
+        try {
+            do {
+                int count;
+                while ((count = outbound.drainTo(writeBatch)) > 0) {
+                    for (int i = 0; i < count; i++) {
+                        writeTo(writeBatch[i]);
+                        writeBatch[i] = null;
+                    }
+                    flushWriteBuffer();
+                }
+                flushScheduled.set(false);
+                // A frame may have been queued after the last drain but before the flag was cleared.
+            } while (!outbound.isEmpty() && flushScheduled.compareAndSet(false, true));
+        } catch (IOException e) {
+            flushScheduled.set(false);
+            Server.LOGGER.error("Could not write to client: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Copy a frame into the write buffer. Frames are shared read-only buffers, so their bytes can't be
+     * written from a backing array; copying them into a buffer that is reused for every frame avoids
+     * allocating a copy per frame and recipient.
+     */
+    private void writeTo(ByteBuffer frame) throws IOException {
+        serverInstance.recordBytesWritten(frame.remaining());
+        while (frame.hasRemaining()) {
+            if (buffered == writeBuffer.length) flushWriteBuffer();
+            var count = Math.min(frame.remaining(), writeBuffer.length - buffered);
+            frame.get(writeBuffer, buffered, count);
+            buffered += count;
+        }
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        if (buffered == 0) return;
+        out.write(writeBuffer, 0, buffered);
+        buffered = 0;
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        try {
+            // Closing the socket closes both streams and unblocks a writer stuck on a slow client.
+            clientSocket.close();
+        } catch (IOException e) {
+            Server.LOGGER.error("Could not properly close connection! " + e.getMessage());
+        }
+        getOutbound().clear();
+        onClosed();
+        isRunning = false;
+    }
+
+    @Override
+    public void run() {
+        if (isRunning) {
+            Server.LOGGER.warn("This client runnable is already running!");
+            return;
+        }
+
+        isRunning = true;
+
+        try {
+            InputStream binaryIn = null;
+            while (isConnected()) {
+                if (getFraming() == Framing.LINE) {
+                    var inLine = in.readLine();
+                    if (inLine == null) break;
+                    onMessage(inLine);
+                } else {
+                    // The client only switches after the handshake was answered, so the line reader has nothing buffered.
+                    if (binaryIn == null) binaryIn = new BufferedInputStream(clientSocket.getInputStream());
+                    var payload = LengthFrameDecoder.readFrame(binaryIn, MAX_FRAME_LENGTH);
+                    if (payload == null) break;
+                    onFrame(payload);
+                }
+            }
+            close();
+        } catch (IOException e) {
+            Server.LOGGER.error(e.getMessage());
+            close();
+        }
+
+    }
+}
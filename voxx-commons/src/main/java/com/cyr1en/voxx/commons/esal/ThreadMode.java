@@ -0,0 +1,35 @@
+package com.cyr1en.voxx.commons.esal;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The kind of threads used to run {@link ClientConnection} readers and event listeners.
+ */
+public enum ThreadMode {
+    /**
+     * Classic platform threads. Every blocked reader holds on to a full OS thread and its stack.
+     */
+    PLATFORM,
+    /**
+     * Virtual threads. Blocked readers only park a small heap allocated continuation, which makes
+     * tens of thousands of mostly idle chat sockets cheap to keep around.
+     */
+    VIRTUAL;
+
+    /**
+     * Create an executor that runs every task on a thread of this mode.
+     * <p>
+     * {@link #PLATFORM} returns a cached thread pool so idle threads are reused, {@link #VIRTUAL}
+     * starts a new virtual thread for every task since they are not worth pooling.
+     *
+     * @param namePrefix prefix for the thread names.
+     * @return a new {@link ExecutorService}.
+     */
+    public ExecutorService newExecutor(String namePrefix) {
+        return switch (this) {
+            case PLATFORM -> Executors.newCachedThreadPool(Thread.ofPlatform().name(namePrefix, 0).factory());
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+        };
+    }
+}
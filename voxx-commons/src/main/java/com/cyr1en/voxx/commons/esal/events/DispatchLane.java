@@ -0,0 +1,159 @@
+package com.cyr1en.voxx.commons.esal.events;
+
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A serial executor on top of a shared {@link Executor}, with a bounded queue per key.
+ * <p>
+ * Tasks submitted to the same lane run one after the other in submission order, but a lane does
+ * not own a thread. Whenever a lane has work it schedules one drain task on the shared executor,
+ * so many lanes can make progress in parallel on the same pool.
+ * <p>
+ * Many keys share a lane, so the capacity is not enforced for the lane as a whole but for every key
+ * on its own: a key can have at most {@code capacity} tasks queued, and the {@link OverflowPolicy}
+ * only ever affects the key that overflowed. One client flooding the server therefore can't block,
+ * drop or disconnect the other clients on its lane. Tasks that are {@link #force(Runnable) forced}
+ * into the lane don't count towards any key and can't be dropped.
+ */
+class DispatchLane implements Runnable {
+
+    // Amount of tasks drained before the lane yields its thread to other lanes.
+    private static final int BATCH_SIZE = 64;
+
+    private final Executor executor;
+    private final int capacity;
+    private final LinkedBlockingDeque<Queued> tasks;
+    // Amount of queued tasks per key, guarded by this lane. Keys without queued tasks are removed.
+    private final HashMap<Object, Integer> queuedByKey;
+    private final AtomicBoolean scheduled;
+    private int blockedPosters;
+
+    DispatchLane(Executor executor, int capacity) {
+        this.executor = executor;
+        this.capacity = capacity;
+        this.tasks = new LinkedBlockingDeque<>();
+        this.queuedByKey = new HashMap<>();
+        this.scheduled = new AtomicBoolean(false);
+        this.blockedPosters = 0;
+    }
+
+    /**
+     * Queue a task following the overflow policy if its key already has {@code capacity} tasks queued.
+     *
+     * @param key    key the task is counted for.
+     * @param task   task to queue.
+     * @param policy what to do if the key is full.
+     * @return null if nothing was dropped, otherwise the task that will not run. That is the
+     * given task, or the oldest queued task of the same key for {@link OverflowPolicy#DROP_OLDEST}.
+     */
+    Runnable submit(Object key, Runnable task, OverflowPolicy policy) {
+        Runnable dropped = null;
+        synchronized (this) {
+            if (!tryAcquire(key)) {
+                switch (policy) {
+                    case BLOCK -> {
+                        blockedPosters++;
+                        try {
+                            do wait(); while (!tryAcquire(key));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return task;
+                        } finally {
+                            blockedPosters--;
+                        }
+                    }
+                    case DROP_OLDEST -> {
+                        // The slot of the dropped task is handed over to the new one.
+                        dropped = removeOldest(key);
+                        if (dropped == null) return task;
+                    }
+                    case DROP_NEWEST, DISCONNECT -> {
+                        return task;
+                    }
+                }
+            }
+            tasks.offerLast(new Queued(key, task));
+        }
+        schedule();
+        return dropped;
+    }
+
+    /**
+     * Queue a task even if its key is full. This is used for the few events that must never be
+     * dropped, they don't count towards the capacity of any key.
+     *
+     * @param task task to queue.
+     */
+    void force(Runnable task) {
+        tasks.offerLast(new Queued(null, task));
+        schedule();
+    }
+
+    private boolean tryAcquire(Object key) {
+        var queued = queuedByKey.getOrDefault(key, 0);
+        if (queued >= capacity) return false;
+        queuedByKey.put(key, queued + 1);
+        return true;
+    }
+
+    private synchronized void release(Object key) {
+        queuedByKey.computeIfPresent(key, (k, queued) -> queued == 1 ? null : queued - 1);
+        if (blockedPosters > 0) notifyAll();
+    }
+
+    private Runnable removeOldest(Object key) {
+        for (var queued : tasks) {
+            if (!Objects.equals(queued.key(), key)) continue;
+            if (tasks.removeFirstOccurrence(queued)) return queued.task();
+        }
+        return null;
+    }
+
+    /**
+     * @param key key of submitted tasks.
+     * @return true if the next task submitted for the key would trigger the {@link OverflowPolicy}.
+     */
+    synchronized boolean isFull(Object key) {
+        return queuedByKey.getOrDefault(key, 0) >= capacity;
+    }
+
+    int size() {
+        return tasks.size();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            // The executor is shutting down, drain what is left on the calling thread.
+            run();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            Queued queued;
+            var drained = 0;
+            while (drained++ < BATCH_SIZE && (queued = tasks.pollFirst()) != null) {
+                if (queued.key() != null) release(queued.key());
+                queued.task().run();
+            }
+        } finally {
+            scheduled.set(false);
+            if (!tasks.isEmpty()) schedule();
+        }
+    }
+
+    /**
+     * A queued task and the key it is counted for, null if it was forced into the lane.
+     */
+    private record Queued(Object key, Runnable task) {
+    }
+}
@@ -1,9 +1,19 @@
 package com.cyr1en.voxx.commons.esal.events;
 
-import java.lang.reflect.InvocationTargetException;
+import com.cyr1en.voxx.commons.metrics.Histogram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
@@ -12,10 +22,9 @@ import java.util.function.Supplier;
  *
  * <p>
  * This implementation as mentioned above, is multithreaded, therefore it won't block
- * the main thread. Multithreading is handled through an {@link ExecutorService} that
- * we can set. By default, the executor service is set as a single thread executor.
- * However, if we chose to set a {@link ThreadPoolExecutor} instead, we can do so
- * and the {@link EventBus#post(Object)} function will adapt accordingly.
+ * the main thread. Multithreading is handled through a long-lived {@link ExecutorService}
+ * that we can set. By default, the executor service is set as a single thread executor.
+ * Posting an event only queues its listeners on that executor, no threads are created per post.
  * <p>
  * Usage of this map is very simple. Any object can be an event if we chose to do so.
  * To make a listener for that event, we can make a class that implements {@link Listener}
@@ -25,55 +34,298 @@ import java.util.function.Supplier;
  */
 public class EventBus {
 
-    private final Map<Class<?>, List<ListenerMethod>> listenerMap;
-    private Supplier<ExecutorService> executorServiceSupplier;
+    private static final Logger LOGGER = LogManager.getLogger("EventBus");
+
+    private static final ListenerMethod[] NO_LISTENERS = new ListenerMethod[0];
+    private static final Comparator<ListenerMethod> BY_PRIORITY =
+            Comparator.comparingInt(ListenerMethod::getPriority).reversed();
+
+    private final ConcurrentHashMap<Class<?>, ListenerMethod[]> listenerMap;
+    private volatile ClassValue<ListenerMethod[]> resolvedListeners;
+    private final int laneCount;
+    private final LongAdder rejectedCount;
+    private final LongAdder listenerFailures;
+    private final Histogram dispatchLatency;
+    private final AtomicInteger nextLane;
+    private volatile int queueCapacity;
+    private volatile OverflowPolicy overflowPolicy;
+    private volatile ExecutorService executor;
+    private volatile DispatchLane[] lanes;
 
     /**
      * Zero argument constructor.
      * <p>
      * For optimal performance and minimal unexpected behavior, the listener map will
      * be set as a {@link ConcurrentHashMap} since we will be accessing this map in a
-     * concurrent manner.
+     * concurrent manner. The listener arrays in the map are copy-on-write, they are never
+     * modified after they were put in the map, so posting can iterate them without locking.
      */
     public EventBus() {
+        this(Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "event-bus");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Construct an event bus that dispatches all of its listeners on the given executor.
+     * <p>
+     * The amount of lanes for {@link KeyedEvent}s defaults to twice the amount of available processors.
+     *
+     * @param executor long-lived {@link ExecutorService} that is owned by this bus from now on.
+     */
+    public EventBus(ExecutorService executor) {
+        this(executor, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Construct an event bus that dispatches all of its listeners on the given executor.
+     * <p>
+     * The queues are unbounded, use {@link #setQueueCapacity(int)} to bound them.
+     *
+     * @param executor  long-lived {@link ExecutorService} that is owned by this bus from now on.
+     * @param laneCount amount of serial lanes for {@link KeyedEvent}s, rounded up to a power of two.
+     */
+    public EventBus(ExecutorService executor, int laneCount) {
+        this(executor, laneCount, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Construct an event bus that dispatches all of its listeners on the given executor.
+     *
+     * @param executor     long-lived {@link ExecutorService} that is owned by this bus from now on.
+     * @param laneCount    amount of serial lanes for {@link KeyedEvent}s, rounded up to a power of two.
+     * @param queueCapacity maximum amount of events queued per dispatch key before the {@link OverflowPolicy} applies.
+     */
+    public EventBus(ExecutorService executor, int laneCount, int queueCapacity) {
         listenerMap = new ConcurrentHashMap<>();
-        executorServiceSupplier = Executors::newSingleThreadExecutor;
+        resolvedListeners = newResolver();
+        this.laneCount = laneCount <= 1 ? 1 : Integer.highestOneBit(laneCount - 1) << 1;
+        this.rejectedCount = new LongAdder();
+        this.listenerFailures = new LongAdder();
+        this.dispatchLatency = new Histogram();
+        this.nextLane = new AtomicInteger();
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = OverflowPolicy.BLOCK;
+        this.executor = executor;
+        this.lanes = createLanes(executor);
+    }
+
+    private DispatchLane[] createLanes(ExecutorService executor) {
+        var created = new DispatchLane[laneCount];
+        for (int i = 0; i < created.length; i++)
+            created[i] = new DispatchLane(executor, queueCapacity);
+        return created;
+    }
+
+    /**
+     * Set the maximum amount of events that can be queued for one dispatch key, e.g. one client
+     * connection. Events that are not {@link KeyedEvent}s are counted per lane. This replaces the
+     * lanes, so it should be set before events are posted.
+     *
+     * @param queueCapacity capacity of every key, must be at least 1.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be at least 1");
+        this.queueCapacity = queueCapacity;
+        this.lanes = createLanes(executor);
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Set what happens to posted events when their key is full.
+     *
+     * @param overflowPolicy the {@link OverflowPolicy} to apply.
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Check if a key has as many events queued as it may. Transports that can't block their reading
+     * thread use this to stop reading from a client until its events were handled.
+     *
+     * @param key dispatch key of a {@link KeyedEvent}.
+     * @return true if posting an event with this key would trigger the {@link OverflowPolicy}.
+     */
+    public boolean isSaturated(Object key) {
+        return laneOf(key).isFull(key);
+    }
+
+    /**
+     * @return the amount of events that are queued on all lanes and were not handled yet.
+     */
+    public int getQueueDepth() {
+        var depth = 0;
+        for (var lane : lanes)
+            depth += lane.size();
+        return depth;
+    }
+
+    /**
+     * @return the amount of events that were dropped by the {@link OverflowPolicy} since the bus was created.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * @return the amount of listener invocations that threw since the bus was created.
+     */
+    public long getListenerFailureCount() {
+        return listenerFailures.sum();
+    }
+
+    /**
+     * @return nanoseconds from posting an event until all of its listeners ran, including the time it was queued.
+     */
+    public Histogram getDispatchLatency() {
+        return dispatchLatency;
+    }
+
+    /**
+     * Pick the lane of a key. Keys are spread with the same mixing {@link HashMap} uses since
+     * identity hash codes of neighbouring objects tend to share their low bits.
+     *
+     * @param key dispatch key of a {@link KeyedEvent}.
+     * @return the lane that all events with this key are dispatched on.
+     */
+    private DispatchLane laneOf(Object key) {
+        var hash = key.hashCode();
+        var lanes = this.lanes;
+        return lanes[(hash ^ (hash >>> 16)) & (lanes.length - 1)];
+    }
+
+    /**
+     * Replace the {@link ExecutorService} that listeners are dispatched on.
+     * <p>
+     * The executor is kept for the lifetime of the bus (or until it is replaced), the previous
+     * executor is shut down after its queued listeners have run.
+     *
+     * @param executor the new executor.
+     */
+    public void setExecutorService(ExecutorService executor) {
+        var previous = this.executor;
+        this.executor = executor;
+        this.lanes = createLanes(executor);
+        previous.shutdown();
     }
 
     /**
      * Allows us to set the {@link Supplier} for our executor service.
      *
      * @param supplier Supplier for the {@link ExecutorService}
+     * @deprecated the supplier used to be called for every posted event. It is now called once and the
+     * executor it supplies is kept, use {@link #setExecutorService(ExecutorService)} instead.
      */
+    @Deprecated
     public void setExecutorServiceSupplier(Supplier<ExecutorService> supplier) {
-        this.executorServiceSupplier = supplier;
+        setExecutorService(supplier.get());
     }
 
     /**
      * Subscribe all of the {@link com.cyr1en.voxx.commons.esal.events.annotation.EventListener} in the class.
+     * <p>
+     * Safe to call while events are being posted, events that are already being dispatched keep
+     * the listeners they started with.
      *
      * @param listener Object with functions annotated with {@link com.cyr1en.voxx.commons.esal.events.annotation.EventListener}
      */
     public void subscribeListeners(Listener listener) {
         iterateAnnotatedFunctions(listener, (clazz, method) -> {
-            List<ListenerMethod> eventListeners = listenerMap.computeIfAbsent(clazz, k -> new ArrayList<>());
-            eventListeners.add(new ListenerMethod(listener, method));
+            var listenerMethod = new ListenerMethod(listener, method);
+            listenerMap.compute(clazz, (k, current) -> {
+                var updated = current == null ? new ListenerMethod[]{listenerMethod} :
+                        Arrays.copyOf(current, current.length + 1);
+                updated[updated.length - 1] = listenerMethod;
+                Arrays.sort(updated, BY_PRIORITY);
+                return updated;
+            });
         });
+        resolvedListeners = newResolver();
     }
 
     /**
      * unsubscribe all of the {@link com.cyr1en.voxx.commons.esal.events.annotation.EventListener} in the class.
+     * <p>
+     * Only the listener methods of this exact listener instance are removed, other listeners for
+     * the same events stay subscribed.
      *
      * @param listener Object with functions annotated with {@link com.cyr1en.voxx.commons.esal.events.annotation.EventListener}
      */
     public void unsubscribeListeners(Listener listener) {
-        iterateAnnotatedFunctions(listener, (clazz, method) -> {
-            List<ListenerMethod> eventListeners = listenerMap.get(clazz);
-            if (eventListeners != null) {
-                eventListeners.clear();
+        iterateAnnotatedFunctions(listener, (clazz, method) -> listenerMap.computeIfPresent(clazz, (k, current) -> {
+            var updated = Arrays.stream(current)
+                    .filter(l -> l.getListenerInstance() != listener || !l.getMethod().equals(method))
+                    .toArray(ListenerMethod[]::new);
+            return updated.length == 0 ? null : updated;
+        }));
+        resolvedListeners = newResolver();
+    }
+
+    /**
+     * Create an empty cache of resolved listeners.
+     * <p>
+     * A {@link ClassValue} can't be cleared, so whenever the registered listeners change, the whole
+     * cache is swapped for a new one and every event class is resolved again on its next post.
+     *
+     * @return a new resolver cache.
+     */
+    private ClassValue<ListenerMethod[]> newResolver() {
+        return new ClassValue<>() {
+            @Override
+            protected ListenerMethod[] computeValue(Class<?> type) {
+                return resolveListeners(type);
             }
-        });
+        };
+    }
 
+    /**
+     * Collect the listeners of an event class and of all of its super classes and interfaces into one array.
+     * <p>
+     * Listeners are ordered by their {@link com.cyr1en.voxx.commons.esal.events.annotation.EventListener#priority()}.
+     * Within the same priority, listeners of the most specific type come first, so a listener for
+     * {@link Object} is invoked after the listeners that were written for the event itself.
+     *
+     * @param eventType concrete class of a posted event.
+     * @return every listener that has to be invoked for the event class.
+     */
+    private ListenerMethod[] resolveListeners(Class<?> eventType) {
+        var resolved = new ArrayList<ListenerMethod>();
+        for (var type : typeHierarchy(eventType)) {
+            var eventListeners = listenerMap.get(type);
+            if (eventListeners != null) resolved.addAll(List.of(eventListeners));
+        }
+        if (resolved.isEmpty()) return NO_LISTENERS;
+        resolved.sort(BY_PRIORITY);
+        return resolved.toArray(NO_LISTENERS);
+    }
+
+    /**
+     * @param type the type to start from.
+     * @return the type, its super classes and then all the interfaces they implement, without duplicates.
+     */
+    private static Set<Class<?>> typeHierarchy(Class<?> type) {
+        var hierarchy = new LinkedHashSet<Class<?>>();
+        for (var current = type; current != null; current = current.getSuperclass())
+            hierarchy.add(current);
+
+        var interfaces = new ArrayDeque<Class<?>>();
+        hierarchy.forEach(c -> interfaces.addAll(List.of(c.getInterfaces())));
+        while (!interfaces.isEmpty()) {
+            var current = interfaces.poll();
+            if (hierarchy.add(current))
+                interfaces.addAll(List.of(current.getInterfaces()));
+        }
+        return hierarchy;
     }
 
     /**
@@ -93,7 +345,7 @@ public class EventBus {
         var methods = listener.getClass().getDeclaredMethods();
         Arrays.stream(methods).filter(method -> method.isAnnotationPresent(com.cyr1en.voxx.commons.esal.events.annotation.EventListener.class))
                 .forEach(filtered -> {
-                    if (filtered.getParameterCount() > 1) return;
+                    if (filtered.getParameterCount() != 1) return;
                     onVisit.accept(filtered.getParameterTypes()[0], filtered);
                 });
     }
@@ -105,142 +357,173 @@ public class EventBus {
      *
      * @param event event to post.
      * @param <T>   The type of the event.
+     * @return a future that completes once every listener was invoked.
      */
-    public <T> void post(T event) {
-        post(event, () -> {
-        });
+    public <T> CompletableFuture<Void> post(T event) {
+        return post(event, null);
     }
 
     /**
      * Function that invokes all the listeners for the event T.
      * <p>
      * This is a generic function that would accept any type T objects as a parameter
-     * and see if the class for that type is registered in the listener map.
+     * and invokes the listeners of its class and of all of its super classes and interfaces.
+     * The listeners of each event class are resolved once and cached until listeners are
+     * subscribed or unsubscribed, so the type hierarchy is not walked on every post.
+     * <p>
+     * The event is queued as one task on a lane that runs on the long-lived {@link ExecutorService}
+     * of this bus, so posting an event never creates threads. The runAfter callback is chained to
+     * the completion of all the listeners through {@link CompletableFuture}, it runs even if there
+     * are no listeners for the event or if one of them failed.
      * <p>
-     * If the Supplier supplies a {@link ThreadPoolExecutor}, this function will take
-     * advantage of that instead of making a new single-thread executor for every listener.
+     * If the event is a {@link KeyedEvent}, it runs on the lane of its key, after every event with the
+     * same key that was posted before it. Other events are spread over the lanes. Listeners of one
+     * event run one after the other, ordered by their priority.
      * <p>
-     * Since this invokes each listener across multiple threads, use `synchronized` for objects
+     * The queue of every key is bounded. If the key already has as many events queued as the capacity
+     * allows, the {@link OverflowPolicy} of this bus decides if the posting thread blocks or if an event
+     * of that key is dropped; events of other keys on the same lane are never affected. The future of a
+     * dropped event completes exceptionally with a {@link RejectedExecutionException} and its runAfter
+     * doesn't run.
+     * <p>
+     * Since this invokes listeners across multiple threads, use `synchronized` for objects
      * that contains sensitive data or use {@link java.util.concurrent.atomic.AtomicReference}.
      *
-     * @param event event to post.
-     * @param <T>   The type of the event.
+     * @param event    event to post.
+     * @param runAfter runnable to run after all the listeners are invoked, can be null.
+     * @param <T>      The type of the event.
+     * @return a future that completes once every listener was invoked and runAfter ran.
      */
-    public <T> void post(T event, Runnable runAfter) {
-        Class<?> eventType = event.getClass();
-        var eventListeners = listenerMap.get(eventType);
-        if (Objects.isNull(eventListeners)) return;
-
-        var executor = executorServiceSupplier.get();
-        if (executor instanceof ThreadPoolExecutor) {
-            postThreadPool(event, runAfter, eventListeners);
+    public <T> CompletableFuture<Void> post(T event, Runnable runAfter) {
+        var eventListeners = resolvedListeners.get(event.getClass());
+        var keyed = event instanceof KeyedEvent k ? k : null;
+
+        CompletableFuture<Void> done;
+        if (keyed == null && eventListeners.length == 0) {
+            done = CompletableFuture.completedFuture(null);
         } else {
-            postSingleThread(event, runAfter, eventListeners);
+            var dispatch = new Dispatch(event, eventListeners, dispatchLatency, listenerFailures);
+            var lanes = this.lanes;
+            var lane = keyed == null ? lanes[nextLane.getAndIncrement() & (lanes.length - 1)] :
+                    laneOf(keyed.dispatchKey());
+            if (keyed != null && !keyed.isDroppable()) {
+                lane.force(dispatch);
+            } else {
+                var dropped = lane.submit(keyed == null ? lane : keyed.dispatchKey(), dispatch, overflowPolicy);
+                if (dropped != null) reject((Dispatch) dropped, keyed);
+            }
+            done = dispatch.completion;
         }
+        return Objects.isNull(runAfter) ? done : done.thenRun(runAfter);
     }
 
     /**
-     * Function that invokes all the listeners for the event T.
-     * <p>
-     * This function assumes that the {@link ExecutorService} provided by the {@link Supplier} is a {@link ThreadPoolExecutor}.
+     * Complete a dropped event and apply the {@link OverflowPolicy#DISCONNECT} policy if needed.
      *
-     * @param event          event to post.
-     * @param runAfter       runnable to run after all the listeners are invoked.
-     * @param eventListeners list of listeners to invoke.
-     * @param <T>            The type of the event.
+     * @param dropped the event that was dropped.
+     * @param keyed   the event that was being posted when its key overflowed.
      */
-    private <T> void postThreadPool(T event, Runnable runAfter, List<ListenerMethod> eventListeners) {
-        var threadPool = (ThreadPoolExecutor) executorServiceSupplier.get();
-        for (var listener : eventListeners) {
-            threadPool.execute(() -> {
-                try {
-                    listener.invoke(event);
-                } catch (InvocationTargetException | IllegalAccessException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+    private void reject(Dispatch dropped, KeyedEvent keyed) {
+        rejectedCount.increment();
+        dropped.completion.completeExceptionally(new RejectedExecutionException(
+                "Queue overflow, dropped " + dropped.event.getClass().getSimpleName()));
+
+        if (overflowPolicy != OverflowPolicy.DISCONNECT || keyed == null) return;
+        if (keyed.dispatchKey() instanceof AutoCloseable closeable) {
+            LOGGER.warn("Closing {} because its event queue overflowed", keyed.dispatchKey());
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                LOGGER.error("Could not close " + keyed.dispatchKey(), e);
+            }
         }
-        threadPool.shutdown();
-        runAfter.run();
     }
 
     /**
-     * Function that invokes all the listeners for the event T.
-     * <p>
-     * This function assumes that the {@link ExecutorService} provided by the {@link Supplier} is a single-thread executor.
-     *
-     * @param event          event to post.
-     * @param runAfter       runnable to run after all the listeners are invoked.
-     * @param eventListeners list of listeners to invoke.
-     * @param <T>            The type of the event.
+     * Stop the executor of this bus. Listeners that are already queued still run.
      */
-    private <T> void postSingleThread(T event, Runnable runAfter, List<ListenerMethod> eventListeners) {
-        var executors = new ArrayList<ExecutorService>();
-        for (var listener : eventListeners) {
-            var executor = executorServiceSupplier.get();
-            executors.add(executor);
-            executor.execute(() -> invokeMethod(listener, event));
-            executor.shutdown();
-        }
-        runAfterSingleThread(runAfter, executors);
+    public void shutdown() {
+        executor.shutdown();
     }
 
     /**
-     * Function that makes sure that all single thread {@link ExecutorService} are shutdown before running the {@link Runnable}
-     * runAfter.
+     * Wait for the listeners that were queued before {@link #shutdown()} to finish.
      *
-     * @param runAfter  runnable to run after all the listeners are invoked.
-     * @param executors list of executors to shut down.
+     * @param timeout maximum time to wait.
+     * @param unit    unit of the timeout.
+     * @return true if the executor terminated, false if the timeout elapsed first.
+     * @throws InterruptedException if interrupted while waiting.
      */
-    private void runAfterSingleThread(Runnable runAfter, List<ExecutorService> executors) {
-        var runAfterExec = executorServiceSupplier.get();
-        runAfterExec.execute(() -> {
-            var notFinished = executors.stream().filter(e -> !e.isShutdown()).toList();
-            try {
-                for (var es : notFinished) {
-                    es.shutdown();
-                    var done = es.awaitTermination(1, TimeUnit.SECONDS);
-                    if (!done) {
-                        es.shutdownNow();
-                        throw new RuntimeException("ExecutorService did not shutdown in time.");
-                    }
-                }
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            } finally {
-                runAfter.run();
-            }
-        });
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
     }
 
     /**
      * Function that invokes a {@link ListenerMethod} using the event T.
      * <p>
-     * This is a utility function for both postSingleThread and postThreadPool.
+     * Failures are logged and counted here so that one failing listener doesn't affect the others.
      *
      * @param listener the listener method to invoke.
      * @param event    the event to pass to the listener method.
+     * @param failures counter of failed invocations.
      * @param <T>      The type of the event.
      */
-    private <T> void invokeMethod(ListenerMethod listener, T event) {
+    private static <T> void invokeMethod(ListenerMethod listener, T event, LongAdder failures) {
         try {
             listener.invoke(event);
-        } catch (InvocationTargetException | IllegalAccessException e) {
-            throw new RuntimeException(e);
+        } catch (Throwable e) {
+            failures.increment();
+            LOGGER.error(String.format("Listener %s threw while handling %s", listener.getMethod(),
+                    event.getClass().getSimpleName()), e);
+        }
+    }
+
+    /**
+     * A posted event together with the listeners that were resolved for it when it was posted.
+     */
+    private static final class Dispatch implements Runnable {
+
+        private final Object event;
+        private final ListenerMethod[] listeners;
+        private final CompletableFuture<Void> completion;
+        private final Histogram latency;
+        private final LongAdder failures;
+        private final long postedAt;
+
+        private Dispatch(Object event, ListenerMethod[] listeners, Histogram latency, LongAdder failures) {
+            this.event = event;
+            this.listeners = listeners;
+            this.completion = new CompletableFuture<>();
+            this.latency = latency;
+            this.failures = failures;
+            this.postedAt = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            for (var listener : listeners)
+                invokeMethod(listener, event, failures);
+            latency.recordSince(postedAt);
+            completion.complete(null);
         }
     }
 
     /**
-     * A utility class that contains reference to the listener/event listener {@link Method
-     * and the
+     * A utility class that contains reference to the listener/event listener {@link Method}
+     * and the compiled {@link ListenerInvoker} that calls it.
      */
     public static class ListenerMethod {
 
         private final Listener listenerInstance;
         private final Method method;
+        private final int priority;
+        private final ListenerInvoker invoker;
 
         /**
          * Constructor, pass instance reference for the object that reflects the {@link Method}
+         * <p>
+         * The call path for the method is compiled once here so that invoking the listener for
+         * every posted event does not go through reflection.
          *
          * @param listenerInstance Instance of the method
          * @param method           reflected method from the instance
@@ -248,23 +531,104 @@ public class EventBus {
         public ListenerMethod(Listener listenerInstance, Method method) {
             this.listenerInstance = listenerInstance;
             this.method = method;
+            var annotation = method.getAnnotation(com.cyr1en.voxx.commons.esal.events.annotation.EventListener.class);
+            this.priority = annotation == null ? 0 : annotation.priority();
+            this.invoker = compile(listenerInstance, method);
+        }
+
+        /**
+         * Invoke the listener {@link Method} that was passed in the constructor using the matching
+         * {@link Listener} instance.
+         *
+         * @param event the event to pass to the method.
+         * @throws Throwable anything that the listener method throws.
+         */
+        public void invoke(Object event) throws Throwable {
+            invoker.invoke(event);
+        }
+
+        public Listener getListenerInstance() {
+            return listenerInstance;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public int getPriority() {
+            return priority;
         }
 
         /**
-         * Reflectively invoke the {@link Method} that was passed in the constructor using
-         * the matching {@link Listener} instance.
+         * Build a {@link ListenerInvoker} for the method.
          * <p>
+         * The preferred path spins a small class through {@link LambdaMetafactory} that calls the
+         * listener method directly, which the JIT can inline just like a normal call. That requires
+         * private access to the listener's class; if it is not granted (e.g. the listener lives in a
+         * module that does not open its package), we fall back to a bound {@link MethodHandle}.
          *
-         * @param args Parameters for the method.
-         * @throws InvocationTargetException When the method could not be invoked due to improper param
-         * @throws IllegalAccessException    When the method is not accessible through reflection without
-         *                                   doing the necessary steps to unlock it.
+         * @param listenerInstance instance the method is invoked on.
+         * @param method           the listener method.
+         * @return an invoker for the method.
          */
-        public void invoke(Object... args) throws InvocationTargetException, IllegalAccessException {
-            method.invoke(listenerInstance, args);
+        private static ListenerInvoker compile(Listener listenerInstance, Method method) {
+            try {
+                return compileLambda(listenerInstance, method);
+            } catch (Throwable ignore) {
+            }
+            return compileHandle(listenerInstance, method);
+        }
+
+        /**
+         * Spin a class that calls the listener method directly.
+         *
+         * @throws Throwable if the listener's class can't be accessed privately or the class can't be spun.
+         */
+        static ListenerInvoker compileLambda(Listener listenerInstance, Method method) throws Throwable {
+            var isStatic = Modifier.isStatic(method.getModifiers());
+            var eventType = method.getParameterTypes()[0];
+            var lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+            var factoryType = isStatic ? MethodType.methodType(ListenerInvoker.class) :
+                    MethodType.methodType(ListenerInvoker.class, method.getDeclaringClass());
+            var site = LambdaMetafactory.metafactory(lookup, "invoke", factoryType,
+                    MethodType.methodType(void.class, Object.class), lookup.unreflect(method),
+                    MethodType.methodType(void.class, eventType));
+            return isStatic ? (ListenerInvoker) site.getTarget().invoke() :
+                    (ListenerInvoker) site.getTarget().invoke(listenerInstance);
+        }
+
+        /**
+         * Bind a {@link MethodHandle} to the listener method, which only needs the method to be accessible
+         * from this class.
+         *
+         * @throws IllegalArgumentException if the method is not accessible.
+         */
+        static ListenerInvoker compileHandle(Listener listenerInstance, Method method) {
+            try {
+                var handle = MethodHandles.lookup().unreflect(method);
+                if (!Modifier.isStatic(method.getModifiers())) handle = handle.bindTo(listenerInstance);
+                var bound = handle.asType(MethodType.methodType(void.class, Object.class));
+                // Called as a statement so that invokeExact is typed (Object)void, like the handle.
+                return event -> {
+                    bound.invokeExact(event);
+                };
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Listener method " + method + " is not accessible", e);
+            }
+        }
+
+        ListenerInvoker getInvoker() {
+            return invoker;
         }
     }
 
+    /**
+     * A compiled call path to a single {@link com.cyr1en.voxx.commons.esal.events.annotation.EventListener} method.
+     */
+    @FunctionalInterface
+    public interface ListenerInvoker {
+        void invoke(Object event) throws Throwable;
+    }
 
     /**
      * A super basic listener that does not have any methods to implement. It's sole purpose is purely
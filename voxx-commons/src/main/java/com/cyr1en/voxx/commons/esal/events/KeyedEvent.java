@@ -0,0 +1,28 @@
+package com.cyr1en.voxx.commons.esal.events;
+
+/**
+ * An event that has to be handled in order with the other events that share its key.
+ * <p>
+ * The {@link EventBus} dispatches all events with the same key serially on one lane, while
+ * events with different keys are dispatched on other lanes in parallel. For example, every
+ * event of a client connection uses the connection as its key so that two messages from the
+ * same client are always handled in the order they were received.
+ */
+public interface KeyedEvent {
+
+    /**
+     * @return the key that decides which lane this event is dispatched on.
+     */
+    Object dispatchKey();
+
+    /**
+     * Whether the {@link EventBus} may drop this event when the lane of its key is full.
+     * Events that must always reach their listeners (e.g. a connection being closed) return false
+     * and are queued even if the lane is over its capacity.
+     *
+     * @return true if this event can be dropped by an {@link OverflowPolicy}.
+     */
+    default boolean isDroppable() {
+        return true;
+    }
+}
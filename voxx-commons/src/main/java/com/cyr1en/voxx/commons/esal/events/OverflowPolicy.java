@@ -0,0 +1,27 @@
+package com.cyr1en.voxx.commons.esal.events;
+
+/**
+ * What the {@link EventBus} does with a posted event when its {@link KeyedEvent#dispatchKey()} already
+ * has as many events queued as the bus allows. The policy only applies to the key that overflowed,
+ * other keys that share its lane are not affected.
+ */
+public enum OverflowPolicy {
+    /**
+     * Block the posting thread until the key has room again. When a client reader posts the
+     * events, this throttles the reads of that client instead of queueing without bounds.
+     */
+    BLOCK,
+    /**
+     * Drop the oldest queued event of the same key to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * Drop the event that is being posted.
+     */
+    DROP_NEWEST,
+    /**
+     * Drop the event that is being posted and close its {@link KeyedEvent#dispatchKey()} if it is
+     * {@link AutoCloseable}, e.g. the client connection that is flooding the server.
+     */
+    DISCONNECT
+}
@@ -8,4 +8,12 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface EventListener {
+
+    /**
+     * Listeners with a higher priority are invoked before listeners with a lower priority
+     * when they run one after the other (e.g. for keyed events).
+     *
+     * @return the priority of the listener.
+     */
+    int priority() default 0;
 }
@@ -1,6 +1,17 @@
 package com.cyr1en.voxx.commons.esal.events.server;
 
 import com.cyr1en.voxx.commons.esal.ClientConnection;
+import com.cyr1en.voxx.commons.esal.events.KeyedEvent;
 
-public record ClientDisconnectEvent(ClientConnection clientConnection) {
+public record ClientDisconnectEvent(ClientConnection clientConnection) implements KeyedEvent {
+
+    @Override
+    public Object dispatchKey() {
+        return clientConnection;
+    }
+
+    @Override
+    public boolean isDroppable() {
+        return false;
+    }
 }
@@ -1,20 +1,33 @@
 package com.cyr1en.voxx.commons.esal.events.server;
 
 import com.cyr1en.voxx.commons.esal.ClientConnection;
+import com.cyr1en.voxx.commons.esal.events.KeyedEvent;
 
 /**
  * Event that's called whenever a client sends a message to the server.
+ * <p>
+ * Messages are keyed by their {@link ClientConnection}, so the messages of one client are
+ * handled in the order they were received.
+ * <p>
+ * Depending on the {@link com.cyr1en.voxx.commons.esal.Framing} of the connection, a message is
+ * either a line of text or the binary payload of a length prefixed frame.
  */
-public class ClientMessageEvent {
+public class ClientMessageEvent implements KeyedEvent {
 
     private ClientConnection clientConnection;
     private String message;
+    private byte[] payload;
 
     public ClientMessageEvent(ClientConnection clientConnection, String message) {
         this.clientConnection = clientConnection;
         this.message = message;
     }
 
+    public ClientMessageEvent(ClientConnection clientConnection, byte[] payload) {
+        this.clientConnection = clientConnection;
+        this.payload = payload;
+    }
+
     public ClientConnection getClientConnection() {
         return clientConnection;
     }
@@ -31,4 +44,20 @@ public class ClientMessageEvent {
     public void setMessage(String message) {
         this.message = message;
     }
+
+    /**
+     * @return the payload of a binary frame, or null if the message is a line of text.
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public boolean isBinary() {
+        return payload != null;
+    }
+
+    @Override
+    public Object dispatchKey() {
+        return clientConnection;
+    }
 }
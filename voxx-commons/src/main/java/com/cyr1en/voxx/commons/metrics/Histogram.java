@@ -0,0 +1,113 @@
+package com.cyr1en.voxx.commons.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative long values, like latencies in nanoseconds.
+ * <p>
+ * Values are counted in log-linear buckets the way HDR histograms do: every power of two is split into
+ * {@value #SUB_BUCKETS} equally wide buckets, so any value is known to within 1/{@value #SUB_BUCKETS} of
+ * itself while the whole range of a long fits in less than a thousand counters. Recording a value is one
+ * array increment plus two striped adders, it never allocates or locks.
+ * <p>
+ * Percentiles are computed from the buckets and report the highest value of the bucket the percentile
+ * falls into, so they are never lower than the real value.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    public Histogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     *
+     * @param value the value to record.
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Record the time that passed since a {@link System#nanoTime()} timestamp.
+     *
+     * @param startNanos timestamp taken when the measured operation started.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return amount of recorded values.
+     */
+    public long getCount() {
+        var count = 0L;
+        for (int i = 0; i < BUCKETS; i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * @return sum of all recorded values.
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return highest recorded value, 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100, e.g. 99.9.
+     * @return upper bound of the bucket that holds the percentile, 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        var snapshot = new long[BUCKETS];
+        var total = 0L;
+        for (int i = 0; i < BUCKETS; i++)
+            total += snapshot[i] = counts.get(i);
+        if (total == 0) return 0;
+        var target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+        var seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) return Math.min(upperBoundOf(i), getMax());
+        }
+        return getMax();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        var shift = exponent - SUB_BUCKET_BITS;
+        var subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        var shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        var subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        var lower = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
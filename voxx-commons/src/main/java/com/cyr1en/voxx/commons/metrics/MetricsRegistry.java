@@ -0,0 +1,176 @@
+package com.cyr1en.voxx.commons.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A set of named metrics that can be written in the Prometheus text format.
+ * <p>
+ * Metrics are looked up once, when the component that updates them is created, and then updated
+ * directly: counters are {@link LongAdder}s, histograms are {@link Histogram}s and gauges are read
+ * from a {@link LongSupplier} only when the metrics are written. Updating a metric therefore costs
+ * the same as updating a plain adder, the registry itself is not involved.
+ * <p>
+ * A metric name can have several series that differ by their labels, given as key value pairs:
+ *
+ * <pre>{@code
+ * var registry = new MetricsRegistry();
+ * var pings = registry.counter("voxx_requests_total", "Handled requests.", "request", "ping");
+ * pings.increment();
+ * }</pre>
+ */
+public class MetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ConcurrentSkipListMap<String, Family> families;
+
+    private enum Type {
+        COUNTER, GAUGE, SUMMARY;
+
+        String prometheusName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * All series of one metric name.
+     */
+    private record Family(String name, String help, Type type, double divisor, Map<String, Object> series) {
+    }
+
+    public MetricsRegistry() {
+        this.families = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Get or create a counter.
+     *
+     * @param name   metric name, by convention ending in {@code _total}.
+     * @param help   description of the metric.
+     * @param labels label names and values, alternating.
+     * @return the counter of the series.
+     */
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) series(name, help, Type.COUNTER, 1, labels, LongAdder::new);
+    }
+
+    /**
+     * Register a counter that is kept somewhere else, like the amount of accepted connections of a server.
+     *
+     * @param value reads the current count.
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        series(name, help, Type.COUNTER, 1, labels, () -> value);
+    }
+
+    /**
+     * Register a gauge, a value that can go up and down.
+     *
+     * @param value reads the current value when the metrics are written.
+     */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        series(name, help, Type.GAUGE, 1, labels, () -> value);
+    }
+
+    /**
+     * Get or create a histogram of durations. Values are recorded in nanoseconds and written in
+     * seconds, as Prometheus expects.
+     *
+     * @param name metric name, by convention ending in {@code _seconds}.
+     */
+    public Histogram timer(String name, String help, String... labels) {
+        return (Histogram) series(name, help, Type.SUMMARY, 1e9, labels, Histogram::new);
+    }
+
+    /**
+     * Register a histogram of durations in nanoseconds that is kept somewhere else, like the dispatch
+     * latency of an event bus.
+     */
+    public void timer(String name, String help, Histogram histogram, String... labels) {
+        series(name, help, Type.SUMMARY, 1e9, labels, () -> histogram);
+    }
+
+    private Object series(String name, String help, Type type, double divisor, String[] labels,
+                          Supplier<Object> factory) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must be name value pairs");
+        var family = families.computeIfAbsent(name, n -> new Family(n, help, type, divisor, new ConcurrentSkipListMap<>()));
+        if (family.type() != type)
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type());
+        return family.series().computeIfAbsent(formatLabels(labels), l -> factory.get());
+    }
+
+    /**
+     * Write every metric in the Prometheus text exposition format. Histograms are written as summaries
+     * with their 50th, 90th, 99th and 99.9th percentile.
+     *
+     * @param out where the metrics are written to.
+     */
+    public void writePrometheus(StringBuilder out) {
+        for (var family : families.values()) {
+            out.append("# HELP ").append(family.name()).append(' ').append(family.help()).append('\n');
+            out.append("# TYPE ").append(family.name()).append(' ').append(family.type().prometheusName()).append('\n');
+            family.series().forEach((labels, metric) -> {
+                if (metric instanceof Histogram histogram) {
+                    for (var quantile : QUANTILES) {
+                        var quantileLabel = labels.isEmpty() ? "{quantile=\"" + quantile + "\"}" :
+                                labels.substring(0, labels.length() - 1) + ",quantile=\"" + quantile + "\"}";
+                        out.append(family.name()).append(quantileLabel).append(' ')
+                                .append(histogram.getValueAtPercentile(quantile * 100) / family.divisor()).append('\n');
+                    }
+                    out.append(family.name()).append("_sum").append(labels).append(' ')
+                            .append(histogram.getSum() / family.divisor()).append('\n');
+                    out.append(family.name()).append("_count").append(labels).append(' ')
+                            .append(histogram.getCount()).append('\n');
+                } else {
+                    out.append(family.name()).append(labels).append(' ').append(valueOf(metric)).append('\n');
+                }
+            });
+        }
+    }
+
+    /**
+     * Write every metric on one line, in a form meant for people rather than scrapers. Durations are
+     * written in milliseconds.
+     *
+     * @param out where the metrics are written to.
+     */
+    public void writeSummary(StringBuilder out) {
+        for (var family : families.values()) {
+            family.series().forEach((labels, metric) -> {
+                out.append(family.name()).append(labels).append(": ");
+                if (metric instanceof Histogram histogram) {
+                    var toMillis = 1000 / family.divisor();
+                    out.append(String.format(Locale.ROOT, "count=%d p50=%.3fms p99=%.3fms max=%.3fms",
+                            histogram.getCount(), histogram.getValueAtPercentile(50) * toMillis,
+                            histogram.getValueAtPercentile(99) * toMillis, histogram.getMax() * toMillis));
+                } else {
+                    out.append(valueOf(metric));
+                }
+                out.append('\n');
+            });
+        }
+    }
+
+    private static long valueOf(Object metric) {
+        return metric instanceof LongAdder adder ? adder.sum() : ((LongSupplier) metric).getAsLong();
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length == 0) return "";
+        var formatted = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) formatted.append(',');
+            formatted.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return formatted.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
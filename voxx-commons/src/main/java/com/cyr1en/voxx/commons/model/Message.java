@@ -4,9 +4,13 @@ public class Message {
 
     private final User sender;
     private String content;
-    private final UID messageUID;
+    private final long messageUID;
 
     public Message(User sender, String content, UID messageUID) {
+        this(sender, content, messageUID.asLong());
+    }
+
+    public Message(User sender, String content, long messageUID) {
         this.sender = sender;
         this.content = content;
         this.messageUID = messageUID;
@@ -21,6 +25,13 @@ public class Message {
     }
 
     public UID getUID() {
+        return UID.of(messageUID);
+    }
+
+    /**
+     * @return the UID of this message in its long form, without creating a UID object.
+     */
+    public long getUIDAsLong() {
         return messageUID;
     }
 
@@ -4,7 +4,8 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 /**
  * A class that represents a uniquely identifiable descriptor.
@@ -18,6 +19,9 @@ public class UID {
     // It's important that we change the epoch so that the IDs could also be unique beyond this application.
     public static long TIME_EPOCH = 0x64b62a60;
 
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("M/d/yy h:mm a");
+    private static final DateTimeFormatter STRING_FORMAT = DateTimeFormatter.ofPattern("MM-dd-yyyy HH:mm:ss");
+
     // Make instance variable final so that they could not be changed.
     private final long timestamp;
     private final int id;
@@ -53,10 +57,7 @@ public class UID {
      * @return String of the millis timestamp
      */
     public String getTimestampString() {
-        var offSetMillis = getTimestamp();
-        var ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(offSetMillis), ZoneId.systemDefault());
-        var formatter = DateTimeFormatter.ofPattern("M/d/yy h:mm a");
-        return ldt.format(formatter);
+        return formatTimestamp(asLong());
     }
 
     /**
@@ -93,14 +94,13 @@ public class UID {
     }
 
     /**
-     * Override hasCode. This just uses {@link Objects#hash(Object...)} to has
-     * the timestamp and id
+     * Override hasCode. This hashes the long version of the UID, which is made of the timestamp and id.
      *
      * @return hash code for this class.
      */
     @Override
     public int hashCode() {
-        return Objects.hash(timestamp, id);
+        return hash(asLong());
     }
 
     /**
@@ -126,44 +126,172 @@ public class UID {
 
     @Override
     public String toString() {
-        var formatter = DateTimeFormatter.ofPattern("MM-dd-yyyy HH:mm:ss");
-        return String.format("UID: %d (%d)(%d) (ts: %s)", asLong(), timestamp, id, getLDT().format(formatter));
+        return String.format("UID: %d (%d)(%d) (ts: %s)", asLong(), timestamp, id, getLDT().format(STRING_FORMAT));
+    }
+
+    /*
+     * Helpers for UIDs in their long form, so code that only passes UIDs around doesn't have to
+     * create a UID object for every one of them.
+     */
+
+    /**
+     * Get the timestamp of a UID in its long form.
+     *
+     * @param uid long version of a UID.
+     * @return millis timestamp.
+     */
+    public static long timestampOf(long uid) {
+        return (uid >> 12) + TIME_EPOCH;
+    }
+
+    /**
+     * Get the incremental ID of a UID in its long form.
+     *
+     * @param uid long version of a UID.
+     * @return incremental id, including the node bits if the generator reserved any.
+     */
+    public static int idOf(long uid) {
+        return (int) (uid & 0xFFF);
     }
 
     /**
-     * A thread safe utility class to generate {@link UID} across multiple threads.
+     * Compare two UIDs in their long form by time, then by incremental ID.
+     *
+     * @return a negative number, zero, or a positive number if {@code a} is older, the same, or newer than {@code b}.
+     */
+    public static int compare(long a, long b) {
+        return Long.compare(a, b);
+    }
+
+    /**
+     * Hash a UID in its long form, the same as {@link #hashCode()} of the equivalent UID.
+     *
+     * @param uid long version of a UID.
+     * @return hash code.
+     */
+    public static int hash(long uid) {
+        return Long.hashCode(uid);
+    }
+
+    /**
+     * Format the timestamp of a UID in its long form, like {@link #getTimestampString()}.
+     *
+     * @param uid long version of a UID.
+     * @return "(month-day-year) at (hour):(minute) (AM|PM)"
+     */
+    public static String formatTimestamp(long uid) {
+        var ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampOf(uid)), ZoneId.systemDefault());
+        return ldt.format(TIMESTAMP_FORMAT);
+    }
+
+    /**
+     * A thread safe, lock-free factory for {@link UID}s.
      * <p>
-     * This should allow for multiple threads requests to generate a UID on the same timestamp and
-     * using the first 12 bits of the 54 bits that's used to store their incremental count.
+     * The 12 low bits of a UID are split into a node id and a sequence number, so several servers can
+     * generate UIDs without colliding while the layout, and every UID that was already handed out, stays
+     * the same. By default there are no node bits and all 12 bits count UIDs within a millisecond:
+     * <pre>
+     * timestamp (ms since TIME_EPOCH) | node (nodeBits) | sequence (12 - nodeBits)
+     * </pre>
+     * The last timestamp and sequence are packed into one {@link AtomicLong} and advanced with
+     * compare-and-set, so threads never block each other. When the sequence of a millisecond runs out,
+     * the generator waits for the next millisecond instead of wrapping around. If the clock moves
+     * backwards, it keeps counting from the last timestamp it used, so UIDs stay unique and increasing.
      */
     public static class Generator {
 
-        private static long lastGen;
-        private static int incremental = 0;
+        public static final int LOW_BITS = 12;
+
+        private static volatile Generator defaultGenerator = new Generator(0, 0);
+
+        private final long node;
+        private final int sequenceBits;
+        private final long sequenceMask;
+        private final LongSupplier clock;
+        private final AtomicLong state;
+
+        /**
+         * @param nodeId   id of this node, between 0 and {@code 2^nodeBits - 1}.
+         * @param nodeBits number of bits reserved for the node id, between 0 and 11.
+         */
+        public Generator(int nodeId, int nodeBits) {
+            this(nodeId, nodeBits, System::currentTimeMillis);
+        }
+
+        Generator(int nodeId, int nodeBits, LongSupplier clock) {
+            if (nodeBits < 0 || nodeBits >= LOW_BITS)
+                throw new IllegalArgumentException("nodeBits must be between 0 and " + (LOW_BITS - 1));
+            if (nodeId < 0 || nodeId >= 1 << nodeBits)
+                throw new IllegalArgumentException("nodeId does not fit in " + nodeBits + " bits");
+            this.sequenceBits = LOW_BITS - nodeBits;
+            this.sequenceMask = (1L << sequenceBits) - 1;
+            this.node = (long) nodeId << sequenceBits;
+            this.clock = clock;
+            this.state = new AtomicLong();
+        }
+
+        /**
+         * Generate a UID with the default generator.
+         *
+         * @return A generated {@link UID}.
+         */
+        public static UID generate() {
+            return defaultGenerator.next();
+        }
 
         /**
-         * A synchronized method that generates UID for absolute unique identifiable descriptor
-         * <p>
-         * Since time only moves forward and the last 52 bits are set to that bit. We just need to check
-         * if we're still generating within the same timestamp. If we are, we increment the incremental
-         * part of the UID, which is the first 12 bits. Allowing us to have up to 4095 (0xFFF) incremental
-         * descriptors for a timestamp.
-         * <p>
-         * It's highly unlikely that we will punch through 4095 (0xFFF) incrementation with our application. Even
-         * if 4095 clients connect to the server, not all of them will request a UID generation simultaneously.
-         * <p>
-         * Without the synchronized keyword, this function should still generate UIDs without collisions, but to be
-         * thread-safe, I've decided to use synchronized.
+         * Generate a UID in its long form with the default generator, without creating a UID object.
          *
-         * @return A generated {@link  UID}.
+         * @return long version of a generated UID.
+         */
+        public static long generateLong() {
+            return defaultGenerator.nextLong();
+        }
+
+        /**
+         * Replace the generator used by {@link #generate()}, for example to give this server a node id.
+         *
+         * @param generator the new default generator.
+         */
+        public static void setDefault(Generator generator) {
+            defaultGenerator = generator;
+        }
+
+        /**
+         * @return A generated {@link UID}.
+         */
+        public UID next() {
+            return UID.of(nextLong());
+        }
+
+        /**
+         * @return long version of a generated UID.
          */
-        public synchronized static UID generate() {
-            var timestamp = System.currentTimeMillis() - TIME_EPOCH;
-            incremental = lastGen == timestamp ? incremental + 1 : 0;
-            var uidLong = (timestamp << 12) | (0xFFF & incremental);
-            var out = UID.of(uidLong);
-            lastGen = timestamp;
-            return out;
+        public long nextLong() {
+            while (true) {
+                var last = state.get();
+                var lastTimestamp = last >>> sequenceBits;
+                var now = clock.getAsLong() - TIME_EPOCH;
+                long timestamp, sequence;
+                if (now > lastTimestamp) {
+                    timestamp = now;
+                    sequence = 0;
+                } else if ((last & sequenceMask) < sequenceMask) {
+                    // Same millisecond, or the clock moved backwards and we stay on the last timestamp
+                    timestamp = lastTimestamp;
+                    sequence = (last & sequenceMask) + 1;
+                } else if (now == lastTimestamp) {
+                    // Out of sequence numbers, wait for the next millisecond
+                    Thread.onSpinWait();
+                    continue;
+                } else {
+                    // Out of sequence numbers while the clock is behind, move on to the next millisecond
+                    timestamp = lastTimestamp + 1;
+                    sequence = 0;
+                }
+                if (state.compareAndSet(last, timestamp << sequenceBits | sequence))
+                    return timestamp << LOW_BITS | node | sequence;
+            }
         }
     }
 
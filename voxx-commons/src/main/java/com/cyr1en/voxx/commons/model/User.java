@@ -2,15 +2,26 @@ package com.cyr1en.voxx.commons.model;
 
 public class User {
 
-    private final UID uid;
+    private final long uid;
     private String username;
 
     public User(UID uid, String username) {
+        this(uid.asLong(), username);
+    }
+
+    public User(long uid, String username) {
         this.uid = uid;
         this.username = username;
     }
 
     public UID getUID() {
+        return UID.of(uid);
+    }
+
+    /**
+     * @return the UID of this user in its long form, without creating a UID object.
+     */
+    public long getUIDAsLong() {
         return uid;
     }
 
@@ -24,6 +35,6 @@ public class User {
 
     @Override
     public String toString() {
-        return username + ":" + uid.asLong();
+        return username + ":" + uid;
     }
 }
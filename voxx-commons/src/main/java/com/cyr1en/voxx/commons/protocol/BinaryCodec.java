@@ -0,0 +1,366 @@
+package com.cyr1en.voxx.commons.protocol;
+
+import com.cyr1en.voxx.commons.model.Message;
+import com.cyr1en.voxx.commons.model.User;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Compact binary wire format that can be negotiated instead of JSON lines.
+ * <p>
+ * A client asks for it by sending the line {@link #PREAMBLE} right after connecting and waiting
+ * for the server to echo the same line back. From then on every frame in both directions is:
+ * <pre>
+ * varint length | opcode (1 byte) | fields
+ * </pre>
+ * Requests and responses start their fields with the varint correlation id of the request (0 when the
+ * client didn't set one), update messages start with their varint sequence number instead.
+ * Numbers (UIDs, timestamps, counts) are unsigned varints and strings are a varint byte length
+ * followed by UTF-8 bytes, so user content can contain any character including line breaks.
+ * The opcodes cover the built-in requests, their responses and the update messages. Requests
+ * are decoded into the same {@link RequestEnvelope} a JSON request would have produced, and
+ * clients can decode responses and updates back into the equivalent {@link JSONObject}.
+ */
+public class BinaryCodec implements WireCodec {
+
+    public static final BinaryCodec INSTANCE = new BinaryCodec();
+
+    public static final String PREAMBLE = "VOXX-BINARY/1";
+    public static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    // Requests
+    public static final byte PING = 0x01;
+    public static final byte REGISTER_USER = 0x02;
+    public static final byte SEND_MESSAGE = 0x03;
+    public static final byte USER_LIST = 0x04;
+    public static final byte SET_UPDATE_CONNECTION = 0x05;
+    public static final byte RESUME_SESSION = 0x06;
+    public static final byte HISTORY = 0x07;
+    // Responses
+    public static final byte ACK = 0x41;
+    public static final byte PONG = 0x42;
+    public static final byte USER_REGISTERED = 0x43;
+    public static final byte USERNAME_TAKEN = 0x44;
+    public static final byte MESSAGE_ACCEPTED = 0x45;
+    public static final byte USERS = 0x46;
+    public static final byte FAILURE = 0x47;
+    public static final byte HISTORY_BATCH = 0x48;
+    // Updates
+    public static final byte NEW_USER = (byte) 0x81;
+    public static final byte NEW_MESSAGE = (byte) 0x82;
+    public static final byte USER_DISCONNECTED = (byte) 0x83;
+
+    private BinaryCodec() {
+    }
+
+    @Override
+    public ByteBuffer ack(long cid, boolean success) {
+        return new FrameWriter(ACK).writeVarint(cid).writeByte(success ? 1 : 0).toFrame();
+    }
+
+    @Override
+    public ByteBuffer pong(long cid, long timestamp) {
+        return new FrameWriter(PONG).writeVarint(cid).writeVarint(timestamp).toFrame();
+    }
+
+    @Override
+    public ByteBuffer userRegistered(long cid, User user, boolean multiplexed, String resumeToken) {
+        return new FrameWriter(USER_REGISTERED).writeVarint(cid).writeUser(user).writeByte(multiplexed ? 1 : 0)
+                .writeString(resumeToken == null ? "" : resumeToken)
+                .toFrame();
+    }
+
+    @Override
+    public ByteBuffer usernameTaken(long cid, String username) {
+        return new FrameWriter(USERNAME_TAKEN).writeVarint(cid).writeString(username).toFrame();
+    }
+
+    @Override
+    public ByteBuffer failure(long cid, String message) {
+        return new FrameWriter(FAILURE).writeVarint(cid).writeString(message).toFrame();
+    }
+
+    @Override
+    public ByteBuffer messageAccepted(long cid, Message message) {
+        return new FrameWriter(MESSAGE_ACCEPTED).writeVarint(cid).writeMessage(message).toFrame();
+    }
+
+    @Override
+    public ByteBuffer userList(long cid, Collection<User> users) {
+        var writer = new FrameWriter(USERS).writeVarint(cid).writeVarint(users.size());
+        users.forEach(writer::writeUser);
+        return writer.toFrame();
+    }
+
+    @Override
+    public ByteBuffer historyBatch(long cid, int count, long lastUid, boolean more) {
+        return new FrameWriter(HISTORY_BATCH).writeVarint(cid).writeVarint(count).writeVarint(lastUid)
+                .writeByte(more ? 1 : 0)
+                .toFrame();
+    }
+
+    @Override
+    public ByteBuffer newUser(long seq, User user) {
+        return new FrameWriter(NEW_USER).writeVarint(seq).writeUser(user).toFrame();
+    }
+
+    @Override
+    public ByteBuffer newMessage(long seq, User sender, Message message) {
+        return new FrameWriter(NEW_MESSAGE).writeVarint(seq).writeUser(sender).writeMessage(message).toFrame();
+    }
+
+    @Override
+    public ByteBuffer userDisconnected(long seq, User user) {
+        return new FrameWriter(USER_DISCONNECTED).writeVarint(seq).writeUser(user).toFrame();
+    }
+
+    /**
+     * Decode the payload of a request frame.
+     *
+     * @param payload payload of the frame, without its length prefix.
+     * @return the request as it would have been sent in JSON.
+     * @throws IllegalArgumentException if the payload is not a valid request.
+     */
+    public static RequestEnvelope decodeRequest(byte[] payload) {
+        var reader = new FrameReader(payload);
+        var opcode = reader.readByte();
+        var cid = reader.readVarint();
+        var params = new JSONObject();
+        var requestId = switch (opcode) {
+            case PING -> "ping";
+            case REGISTER_USER -> {
+                params.put("uname", reader.readString());
+                if ((reader.readByte() & 1) != 0) params.put("mux", true);
+                yield "ru";
+            }
+            case SEND_MESSAGE -> {
+                params.put("message", reader.readString());
+                yield "sm";
+            }
+            case USER_LIST -> "ul";
+            case SET_UPDATE_CONNECTION -> {
+                params.put("main-user", reader.readString());
+                yield "su";
+            }
+            case RESUME_SESSION -> {
+                params.put("token", reader.readString());
+                params.put("seq", reader.readVarint());
+                if ((reader.readByte() & 1) != 0) params.put("mux", true);
+                yield "rs";
+            }
+            case HISTORY -> {
+                params.put("since", reader.readVarint());
+                params.put("limit", reader.readVarint());
+                yield "hs";
+            }
+            default -> throw new IllegalArgumentException("Unknown request opcode " + opcode);
+        };
+        return new RequestEnvelope(requestId, cid, params);
+    }
+
+    /**
+     * Encode a request that was built as JSON.
+     *
+     * @param request request with a {@code request-id} and its {@code params}.
+     * @return the encoded frame.
+     * @throws IllegalArgumentException if the request has no binary encoding.
+     */
+    public static ByteBuffer encodeRequest(JSONObject request) {
+        var params = request.optJSONObject("params");
+        var cid = request.optLong("cid", 0);
+        return switch (request.getString("request-id")) {
+            case "ping" -> new FrameWriter(PING).writeVarint(cid).toFrame();
+            case "ru" -> new FrameWriter(REGISTER_USER).writeVarint(cid).writeString(params.getString("uname"))
+                    .writeByte(params.optBoolean("mux") ? 1 : 0).toFrame();
+            case "sm" -> new FrameWriter(SEND_MESSAGE).writeVarint(cid).writeString(params.getString("message"))
+                    .toFrame();
+            case "ul" -> new FrameWriter(USER_LIST).writeVarint(cid).toFrame();
+            case "su" -> new FrameWriter(SET_UPDATE_CONNECTION).writeVarint(cid).writeString(params.getString("main-user"))
+                    .toFrame();
+            case "rs" -> new FrameWriter(RESUME_SESSION).writeVarint(cid).writeString(params.getString("token"))
+                    .writeVarint(params.optLong("seq", 0))
+                    .writeByte(params.optBoolean("mux") ? 1 : 0)
+                    .toFrame();
+            case "hs" -> new FrameWriter(HISTORY).writeVarint(cid).writeVarint(params.optLong("since", 0))
+                    .writeVarint(params.optLong("limit", 0))
+                    .toFrame();
+            default -> throw new IllegalArgumentException("No binary encoding for " + request.getString("request-id"));
+        };
+    }
+
+    /**
+     * Decode the payload of a response or update frame into the JSON object the server would have
+     * sent in the JSON wire format.
+     *
+     * @param payload payload of the frame, without its length prefix.
+     * @return the equivalent JSON object.
+     * @throws IllegalArgumentException if the payload is not a valid response or update.
+     */
+    public static JSONObject decodeMessage(byte[] payload) {
+        var reader = new FrameReader(payload);
+        var opcode = reader.readByte();
+        return switch (opcode) {
+            case ACK -> correlate(reader.readVarint(), new JSONObject().put("response-id", (int) reader.readByte()));
+            case PONG -> correlate(reader.readVarint(), new JSONObject().put("response-id", 1))
+                    .put("body", reader.readVarint());
+            case USER_REGISTERED -> {
+                var cid = reader.readVarint();
+                var body = new JSONObject().put("user", reader.readUser());
+                if ((reader.readByte() & 1) != 0) body.put("mux", true);
+                var token = reader.readString();
+                if (!token.isEmpty()) body.put("token", token);
+                yield response(1, cid, body);
+            }
+            case USERNAME_TAKEN -> response(0, reader.readVarint(), new JSONObject()
+                    .put("message", reader.readString() + " is already taken"));
+            case FAILURE -> response(0, reader.readVarint(), new JSONObject().put("message", reader.readString()));
+            case MESSAGE_ACCEPTED -> response(1, reader.readVarint(),
+                    new JSONObject().put("message", reader.readMessage()));
+            case USERS -> {
+                var cid = reader.readVarint();
+                var users = new JSONArray();
+                for (long i = reader.readVarint(); i > 0; i--)
+                    users.put(reader.readUser());
+                yield response(1, cid, new JSONObject().put("users", users));
+            }
+            case HISTORY_BATCH -> response(1, reader.readVarint(), new JSONObject()
+                    .put("count", reader.readVarint())
+                    .put("last", reader.readVarint())
+                    .put("more", reader.readByte() != 0));
+            case NEW_USER -> update("nu", reader.readVarint(), new JSONObject().put("user", reader.readUser()));
+            case NEW_MESSAGE -> update("nm", reader.readVarint(), new JSONObject()
+                    .put("sender", reader.readUser())
+                    .put("message", reader.readMessage()));
+            case USER_DISCONNECTED -> update("ud", reader.readVarint(), new JSONObject().put("user", reader.readUser()));
+            default -> throw new IllegalArgumentException("Unknown message opcode " + opcode);
+        };
+    }
+
+    private static JSONObject response(int responseId, long cid, JSONObject body) {
+        return correlate(cid, new JSONObject().put("response-id", responseId)).put("body", body);
+    }
+
+    private static JSONObject correlate(long cid, JSONObject response) {
+        if (cid != 0) response.put("cid", cid);
+        return response;
+    }
+
+    private static JSONObject update(String updateMessage, long seq, JSONObject body) {
+        var update = new JSONObject().put("update-message", updateMessage);
+        if (seq != 0) update.put("seq", seq);
+        return update.put("body", body);
+    }
+
+    private static class FrameWriter {
+        private byte[] buf;
+        private int length;
+
+        private FrameWriter(byte opcode) {
+            // Leave room for the length prefix, a frame never needs more than 3 bytes for it.
+            this.buf = new byte[64];
+            this.length = 3;
+            buf[length++] = opcode;
+        }
+
+        private FrameWriter writeByte(int b) {
+            ensure(1);
+            buf[length++] = (byte) b;
+            return this;
+        }
+
+        private FrameWriter writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[length++] = (byte) value;
+            return this;
+        }
+
+        private FrameWriter writeString(String value) {
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, length, bytes.length);
+            length += bytes.length;
+            return this;
+        }
+
+        private FrameWriter writeUser(User user) {
+            return writeVarint(user.getUIDAsLong()).writeString(user.getUsername());
+        }
+
+        private FrameWriter writeMessage(Message message) {
+            return writeVarint(message.getUIDAsLong()).writeString(message.getContent());
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(length + extra, buf.length * 2));
+        }
+
+        private ByteBuffer toFrame() {
+            var payloadLength = length - 3;
+            if (payloadLength > MAX_FRAME_LENGTH)
+                throw new IllegalArgumentException(String.format("Frame exceeds %d bytes", MAX_FRAME_LENGTH));
+            var prefixLength = payloadLength < (1 << 7) ? 1 : payloadLength < (1 << 14) ? 2 : 3;
+            var start = 3 - prefixLength;
+            var pos = start;
+            var value = payloadLength;
+            while ((value & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos] = (byte) value;
+            return ByteBuffer.wrap(buf, start, length - start).slice().asReadOnlyBuffer();
+        }
+    }
+
+    private static class FrameReader {
+        private final byte[] buf;
+        private int pos;
+
+        private FrameReader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        private byte readByte() {
+            if (pos >= buf.length) throw new IllegalArgumentException("Truncated frame");
+            return buf[pos++];
+        }
+
+        private long readVarint() {
+            var value = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                var b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private String readString() {
+            var length = readVarint();
+            // A varint of 10 bytes can decode to a negative length
+            if (length < 0) throw new IllegalArgumentException("Malformed string length");
+            if (length > buf.length - pos) throw new IllegalArgumentException("Truncated frame");
+            var value = new String(buf, pos, (int) length, StandardCharsets.UTF_8);
+            pos += (int) length;
+            return value;
+        }
+
+        private JSONObject readUser() {
+            return new JSONObject().put("uid", readVarint()).put("uname", readString());
+        }
+
+        private JSONObject readMessage() {
+            return new JSONObject().put("uid", readVarint()).put("content", readString());
+        }
+    }
+}
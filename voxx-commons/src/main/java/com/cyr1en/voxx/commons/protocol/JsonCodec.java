@@ -0,0 +1,93 @@
+package com.cyr1en.voxx.commons.protocol;
+
+import com.cyr1en.voxx.commons.model.Message;
+import com.cyr1en.voxx.commons.model.User;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * The newline-delimited JSON wire format every client understands.
+ */
+public class JsonCodec implements WireCodec {
+
+    public static final JsonCodec INSTANCE = new JsonCodec();
+
+    private JsonCodec() {
+    }
+
+    @Override
+    public ByteBuffer ack(long cid, boolean success) {
+        var writer = JsonWriter.get().beginObject().name("response-id").value(success ? 1 : 0);
+        if (cid != 0) writer.name("cid").value(cid);
+        return writer.endObject().toFrame();
+    }
+
+    @Override
+    public ByteBuffer pong(long cid, long timestamp) {
+        var writer = JsonWriter.get().beginObject().name("response-id").value(1);
+        if (cid != 0) writer.name("cid").value(cid);
+        return writer.name("body").value(timestamp).endObject().toFrame();
+    }
+
+    @Override
+    public ByteBuffer userRegistered(long cid, User user, boolean multiplexed, String resumeToken) {
+        var writer = JsonWriter.get().beginResponse(1, cid).name("user").user(user);
+        if (multiplexed) writer.name("mux").value(true);
+        if (resumeToken != null) writer.name("token").value(resumeToken);
+        return writer.endEnvelope().toFrame();
+    }
+
+    @Override
+    public ByteBuffer usernameTaken(long cid, String username) {
+        return JsonWriter.get().beginResponse(0, cid).name("message").value(username + " is already taken")
+                .endEnvelope()
+                .toFrame();
+    }
+
+    @Override
+    public ByteBuffer failure(long cid, String message) {
+        return JsonWriter.get().beginResponse(0, cid).name("message").value(message).endEnvelope().toFrame();
+    }
+
+    @Override
+    public ByteBuffer messageAccepted(long cid, Message message) {
+        return JsonWriter.get().beginResponse(1, cid).name("message").message(message).endEnvelope().toFrame();
+    }
+
+    @Override
+    public ByteBuffer userList(long cid, Collection<User> users) {
+        var writer = JsonWriter.get().beginResponse(1, cid).name("users").beginArray();
+        users.forEach(writer::user);
+        return writer.endArray().endEnvelope().toFrame();
+    }
+
+    @Override
+    public ByteBuffer historyBatch(long cid, int count, long lastUid, boolean more) {
+        return JsonWriter.get().beginResponse(1, cid)
+                .name("count").value(count)
+                .name("last").value(lastUid)
+                .name("more").value(more)
+                .endEnvelope()
+                .toFrame();
+    }
+
+    @Override
+    public ByteBuffer newUser(long seq, User user) {
+        return JsonWriter.get().beginUpdate("nu", seq).name("user").user(user).endEnvelope().toFrame();
+    }
+
+    @Override
+    public ByteBuffer newMessage(long seq, User sender, Message message) {
+        return JsonWriter.get().beginUpdate("nm", seq)
+                .name("sender").user(sender)
+                .name("message").message(message)
+                .endEnvelope()
+                .toFrame();
+    }
+
+    @Override
+    public ByteBuffer userDisconnected(long seq, User user) {
+        return JsonWriter.get().beginUpdate("ud", seq).name("user").user(user).endEnvelope().toFrame();
+    }
+}
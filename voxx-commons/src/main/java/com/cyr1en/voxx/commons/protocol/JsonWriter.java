@@ -0,0 +1,300 @@
+package com.cyr1en.voxx.commons.protocol;
+
+import com.cyr1en.voxx.commons.model.Message;
+import com.cyr1en.voxx.commons.model.User;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Streaming writer for the JSON messages the server sends.
+ * <p>
+ * Instead of building a tree of {@link org.json.JSONObject}s and serializing it afterwards, the
+ * writer appends tokens straight into a {@link StringBuilder} that is reused for every message
+ * written on the same thread. The output is always a single compact line, so it can be turned
+ * into a frame with {@link #toFrame()} without any further processing.
+ * <p>
+ * Virtual threads are started per task, so a writer per thread would hardly ever be reused. On a
+ * virtual thread {@link #get()} takes a writer from a small shared pool instead, and {@link #toFrame()}
+ * puts it back.
+ *
+ * <pre>{@code
+ * var frame = JsonWriter.get()
+ *         .beginResponse(1)
+ *         .name("user").user(user)
+ *         .endEnvelope()
+ *         .toFrame();
+ * }</pre>
+ * <p>
+ * Commas and colons are added by the writer, callers only have to keep names and values in order.
+ */
+public class JsonWriter {
+
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final ThreadLocal<JsonWriter> LOCAL = ThreadLocal.withInitial(JsonWriter::new);
+    private static final AtomicReferenceArray<JsonWriter> POOL =
+            new AtomicReferenceArray<>(Runtime.getRuntime().availableProcessors() * 2);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private StringBuilder sb;
+    private boolean pooled;
+
+    public JsonWriter() {
+        this.sb = new StringBuilder(256);
+    }
+
+    /**
+     * Get the writer of the current thread, or a pooled one on a virtual thread, cleared and ready for
+     * a new message. The returned writer must not be used anymore after the message was turned into
+     * a string or frame.
+     *
+     * @return a reusable writer.
+     */
+    public static JsonWriter get() {
+        if (!Thread.currentThread().isVirtual()) return LOCAL.get().reset();
+        var writer = take();
+        writer.pooled = true;
+        return writer.reset();
+    }
+
+    private static JsonWriter take() {
+        for (int i = 0; i < POOL.length(); i++) {
+            var writer = POOL.getAndSet(i, null);
+            if (writer != null) return writer;
+        }
+        return new JsonWriter();
+    }
+
+    private void release() {
+        pooled = false;
+        for (int i = 0; i < POOL.length(); i++)
+            if (POOL.compareAndSet(i, null, this)) return;
+    }
+
+    public JsonWriter reset() {
+        if (sb.capacity() > MAX_RETAINED_CAPACITY) sb = new StringBuilder(256);
+        sb.setLength(0);
+        return this;
+    }
+
+    public JsonWriter beginObject() {
+        separate();
+        sb.append('{');
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        sb.append('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        separate();
+        sb.append('[');
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        sb.append(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) {
+        separate();
+        string(name);
+        sb.append(':');
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        separate();
+        if (value == null) sb.append("null");
+        else string(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        separate();
+        sb.append(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        separate();
+        sb.append(value);
+        return this;
+    }
+
+    /**
+     * Open a response envelope and its body: <code>{"response-id":id,"body":{</code>.
+     * Close it with {@link #endEnvelope()}.
+     *
+     * @param responseId the response id, 1 for success and 0 for failure.
+     * @return this writer.
+     */
+    public JsonWriter beginResponse(int responseId) {
+        return beginResponse(responseId, 0);
+    }
+
+    /**
+     * Open a response envelope that answers a correlated request:
+     * <code>{"response-id":id,"cid":cid,"body":{</code>. Close it with {@link #endEnvelope()}.
+     *
+     * @param responseId the response id, 1 for success and 0 for failure.
+     * @param cid        correlation id of the request, the field is left out if it is 0.
+     * @return this writer.
+     */
+    public JsonWriter beginResponse(int responseId, long cid) {
+        beginObject().name("response-id").value(responseId);
+        if (cid != 0) name("cid").value(cid);
+        return name("body").beginObject();
+    }
+
+    /**
+     * Open an update envelope and its body: <code>{"update-message":type,"body":{</code>.
+     * Close it with {@link #endEnvelope()}.
+     *
+     * @param updateMessage the kind of update, like {@code "nm"} for a new message.
+     * @return this writer.
+     */
+    public JsonWriter beginUpdate(String updateMessage) {
+        return beginUpdate(updateMessage, 0);
+    }
+
+    /**
+     * Open an update envelope with a sequence number:
+     * <code>{"update-message":type,"seq":seq,"body":{</code>. Close it with {@link #endEnvelope()}.
+     *
+     * @param updateMessage the kind of update, like {@code "nm"} for a new message.
+     * @param seq           sequence number of the update, the field is left out if it is 0.
+     * @return this writer.
+     */
+    public JsonWriter beginUpdate(String updateMessage, long seq) {
+        beginObject().name("update-message").value(updateMessage);
+        if (seq != 0) name("seq").value(seq);
+        return name("body").beginObject();
+    }
+
+    /**
+     * Close the body and the envelope opened by {@link #beginResponse(int)} or {@link #beginUpdate(String)}.
+     *
+     * @return this writer.
+     */
+    public JsonWriter endEnvelope() {
+        return endObject().endObject();
+    }
+
+    /**
+     * Write a user as <code>{"uid":uid,"uname":name}</code>.
+     */
+    public JsonWriter user(User user) {
+        return beginObject()
+                .name("uid").value(user.getUIDAsLong())
+                .name("uname").value(user.getUsername())
+                .endObject();
+    }
+
+    /**
+     * Write a message as <code>{"uid":uid,"content":content}</code>.
+     */
+    public JsonWriter message(Message message) {
+        return beginObject()
+                .name("uid").value(message.getUIDAsLong())
+                .name("content").value(message.getContent())
+                .endObject();
+    }
+
+    /**
+     * @return the written JSON as a string.
+     */
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+
+    /**
+     * Encode the written JSON into a frame that can be sent with
+     * {@link com.cyr1en.voxx.commons.esal.ClientConnection#sendFrame(ByteBuffer)}.
+     * The frame is the only allocation, the characters are encoded into it directly. A writer from
+     * {@link #get()} is done after this.
+     *
+     * @return a read-only buffer with the UTF-8 bytes of the JSON followed by {@code '\n'}.
+     */
+    public ByteBuffer toFrame() {
+        var bytes = new byte[utf8Length() + 1];
+        var pos = 0;
+        for (int i = 0; i < sb.length(); i++) {
+            char c = sb.charAt(i);
+            if (c < 0x80) {
+                bytes[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[pos++] = (byte) (0xC0 | (c >> 6));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < sb.length()
+                    && Character.isLowSurrogate(sb.charAt(i + 1))) {
+                var cp = Character.toCodePoint(c, sb.charAt(++i));
+                bytes[pos++] = (byte) (0xF0 | (cp >> 18));
+                bytes[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[pos++] = '?';
+            } else {
+                bytes[pos++] = (byte) (0xE0 | (c >> 12));
+                bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        bytes[pos] = '\n';
+        if (pooled) release();
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    private int utf8Length() {
+        var length = 0;
+        for (int i = 0; i < sb.length(); i++) {
+            char c = sb.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < sb.length()
+                    && Character.isLowSurrogate(sb.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void separate() {
+        if (sb.isEmpty()) return;
+        var last = sb.charAt(sb.length() - 1);
+        if (last != '{' && last != '[' && last != ':') sb.append(',');
+    }
+
+    private void string(String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                case '\b' -> sb.append("\\b");
+                case '\f' -> sb.append("\\f");
+                default -> {
+                    if (c < 0x20) sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
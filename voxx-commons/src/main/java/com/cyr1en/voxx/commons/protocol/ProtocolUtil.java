@@ -1,10 +1,73 @@
 package com.cyr1en.voxx.commons.protocol;
 
+import com.cyr1en.voxx.commons.esal.ClientConnection;
 import org.json.JSONObject;
 
+import java.nio.ByteBuffer;
+
 public class ProtocolUtil {
 
+    /**
+     * Serialize a JSON object into a single line. {@link JSONObject#toString()} already writes compact
+     * JSON and escapes line breaks inside of strings, so the result can be framed as is.
+     *
+     * @param jsonObject object to serialize.
+     * @return the object as a single line of JSON.
+     */
     public static String flattenJSONObject(JSONObject jsonObject) {
-        return jsonObject.toString().replaceAll("\\s{2,}|\\n", "");
+        return jsonObject.toString();
+    }
+
+    /**
+     * Turn a JSON document into a single line by dropping the whitespace between tokens and escaping
+     * raw line breaks inside of strings. Unlike a regex this leaves the content of strings untouched,
+     * and it returns the given string without copying it when it already is a single compact line.
+     *
+     * @param json JSON document, possibly spanning multiple lines.
+     * @return the document as a single line.
+     */
+    public static String compact(String json) {
+        StringBuilder sb = null;
+        var inString = false;
+        var escaped = false;
+        for (int i = 0; i < json.length(); i++) {
+            var c = json.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                } else if (c == '\n' || c == '\r') {
+                    sb = copyUntil(sb, json, i);
+                    sb.append(c == '\n' ? "\\n" : "\\r");
+                    continue;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                sb = copyUntil(sb, json, i);
+                continue;
+            }
+            if (sb != null) sb.append(c);
+        }
+        return sb == null ? json : sb.toString();
+    }
+
+    private static StringBuilder copyUntil(StringBuilder sb, String json, int end) {
+        if (sb != null) return sb;
+        return new StringBuilder(json.length()).append(json, 0, end);
+    }
+
+    /**
+     * Serialize a JSON object once into a frame that can be sent to any amount of connections
+     * with {@link ClientConnection#sendFrame(ByteBuffer)}.
+     *
+     * @param jsonObject object to serialize.
+     * @return the encoded frame.
+     */
+    public static ByteBuffer encodeFrame(JSONObject jsonObject) {
+        return ClientConnection.encodeFrame(flattenJSONObject(jsonObject));
     }
 }
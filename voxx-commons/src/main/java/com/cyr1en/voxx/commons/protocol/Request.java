@@ -4,5 +4,11 @@ import com.cyr1en.voxx.commons.esal.events.server.ClientMessageEvent;
 
 public interface Request {
 
-    void onRequest(ClientMessageEvent event);
+    /**
+     * Handle a request of a client.
+     *
+     * @param event   the event of the message that carried the request.
+     * @param request the request, already decoded from the message.
+     */
+    void onRequest(ClientMessageEvent event, RequestEnvelope request);
 }
@@ -0,0 +1,37 @@
+package com.cyr1en.voxx.commons.protocol;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A request sent by a client, decoded once from its line of JSON.
+ * <p>
+ * Requests have the form <code>{"request-id": id, "cid": cid, "params": {...}}</code>. The params are
+ * optional and are an empty object when the request didn't have any. The correlation id is optional
+ * too; when a client sets it, the response carries the same {@code cid} so that the client can match
+ * responses to requests while update messages arrive on the same connection.
+ *
+ * @param requestId     id of the request, like {@code "sm"} to send a message.
+ * @param correlationId correlation id chosen by the client, 0 if the request had none.
+ * @param params        the parameters of the request.
+ */
+public record RequestEnvelope(String requestId, long correlationId, JSONObject params) {
+
+    /**
+     * Decode a line sent by a client.
+     *
+     * @param line the line of JSON.
+     * @return the decoded request.
+     * @throws JSONException if the line is not a JSON object or has no request id.
+     */
+    public static RequestEnvelope parse(String line) throws JSONException {
+        var json = new JSONObject(line);
+        var params = json.optJSONObject("params");
+        return new RequestEnvelope(json.getString("request-id"), json.optLong("cid", 0),
+                params == null ? new JSONObject() : params);
+    }
+
+    public boolean is(String requestId) {
+        return this.requestId.equals(requestId);
+    }
+}
@@ -0,0 +1,82 @@
+package com.cyr1en.voxx.commons.protocol;
+
+import com.cyr1en.voxx.commons.model.Message;
+import com.cyr1en.voxx.commons.model.User;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Encodes the responses and update messages the server sends into frames of one wire format.
+ * <p>
+ * Every connection has a codec, {@link JsonCodec} unless the client negotiated another format
+ * when it connected. Handlers encode their responses with the codec of the connection they
+ * answer, and broadcasts encode their update once per codec in use.
+ * <p>
+ * Responses take the correlation id of the request they answer, see {@link RequestEnvelope#correlationId()}.
+ * Updates take a sequence number that clients hand back when they resume a session, 0 leaves it out.
+ */
+public interface WireCodec {
+
+    /**
+     * Response to a request that only succeeds or fails.
+     */
+    ByteBuffer ack(long cid, boolean success);
+
+    /**
+     * Response to a ping, carrying the current time of the server.
+     */
+    ByteBuffer pong(long cid, long timestamp);
+
+    /**
+     * Response to a successful user registration or session resume.
+     *
+     * @param multiplexed true if the connection also receives the update messages of the user.
+     * @param resumeToken token to resume the session with after the connection dropped, may be null.
+     */
+    ByteBuffer userRegistered(long cid, User user, boolean multiplexed, String resumeToken);
+
+    /**
+     * Response to a user registration with a name that is already in use.
+     */
+    ByteBuffer usernameTaken(long cid, String username);
+
+    /**
+     * Response to a request that failed, with a message for the user.
+     */
+    ByteBuffer failure(long cid, String message);
+
+    /**
+     * Response to a message that was accepted and is broadcast to the other users.
+     */
+    ByteBuffer messageAccepted(long cid, Message message);
+
+    /**
+     * Response to a request for the list of users.
+     */
+    ByteBuffer userList(long cid, Collection<User> users);
+
+    /**
+     * Response to a history request, sent after the messages of the batch.
+     *
+     * @param count   number of messages in the batch.
+     * @param lastUid UID of the last message in the batch, 0 if it was empty.
+     * @param more    true if there are more messages after the batch.
+     */
+    ByteBuffer historyBatch(long cid, int count, long lastUid, boolean more);
+
+    /**
+     * Update sent when a user joined.
+     */
+    ByteBuffer newUser(long seq, User user);
+
+    /**
+     * Update sent when a user sent a message.
+     */
+    ByteBuffer newMessage(long seq, User sender, Message message);
+
+    /**
+     * Update sent when a user left.
+     */
+    ByteBuffer userDisconnected(long seq, User user);
+}
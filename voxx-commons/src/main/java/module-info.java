@@ -8,6 +8,7 @@ module Project.Voxx.voxx.commons.main {
     exports com.cyr1en.voxx.commons.esal.events.server;
     exports com.cyr1en.voxx.commons.esal.events.annotation;
 
+    exports com.cyr1en.voxx.commons.metrics;
     exports com.cyr1en.voxx.commons.model;
     exports com.cyr1en.voxx.commons.protocol;
 }
\ No newline at end of file
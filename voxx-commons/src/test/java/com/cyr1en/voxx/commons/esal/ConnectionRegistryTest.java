@@ -0,0 +1,84 @@
+package com.cyr1en.voxx.commons.esal;
+
+import com.cyr1en.voxx.commons.model.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ConnectionRegistryTest {
+
+    private static class TestConnection extends ClientConnection {
+        private boolean connected = true;
+
+        private TestConnection(Server server, String remoteAddress) {
+            super(server, remoteAddress);
+        }
+
+        @Override
+        protected void requestFlush() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public void close() {
+            connected = false;
+            onClosed();
+        }
+    }
+
+    @Test
+    public void testIndexesFollowConnection() {
+        var server = new Server(0, 0);
+        var registry = server.getClientConnections();
+        var connection = new TestConnection(server, "10.0.0.1:4000");
+        var user = new User(1, "alice");
+
+        registry.add(connection);
+        Assertions.assertTrue(registry.getPrimary().contains(connection));
+        Assertions.assertTrue(registry.getByHost("10.0.0.1").contains(connection));
+        Assertions.assertTrue(registry.getByUser(user).isEmpty());
+
+        connection.setAssocUser(user);
+        connection.setSupplementalConnection(true);
+        Assertions.assertTrue(registry.getByUser(user).contains(connection));
+        Assertions.assertTrue(registry.getSupplemental().contains(connection));
+        Assertions.assertFalse(registry.getPrimary().contains(connection));
+
+        Assertions.assertTrue(registry.remove(connection));
+        Assertions.assertFalse(registry.remove(connection));
+        Assertions.assertTrue(registry.isEmpty());
+        Assertions.assertTrue(registry.getByUser(user).isEmpty());
+        Assertions.assertTrue(registry.getByHost("10.0.0.1").isEmpty());
+        Assertions.assertTrue(registry.getSupplemental().isEmpty());
+    }
+
+    @Test
+    public void testChangesBeforeAddAreIndexed() {
+        var server = new Server(0, 0);
+        var registry = server.getClientConnections();
+        var connection = new TestConnection(server, "10.0.0.2:4001");
+        var user = new User(2, "bob");
+        connection.setAssocUser(user);
+
+        Assertions.assertFalse(registry.contains(connection));
+        registry.add(connection);
+        Assertions.assertTrue(registry.getByUser(user).contains(connection));
+        Assertions.assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testClosedConnectionIsNotAdded() {
+        var server = new Server(0, 0);
+        var registry = server.getClientConnections();
+        var connection = new TestConnection(server, "10.0.0.3:4002");
+
+        // The client disconnected before the server got to add its connection.
+        connection.close();
+        Assertions.assertFalse(registry.add(connection));
+        Assertions.assertTrue(registry.isEmpty());
+        Assertions.assertTrue(registry.getByHost("10.0.0.3").isEmpty());
+    }
+}
@@ -0,0 +1,30 @@
+package com.cyr1en.voxx.commons.esal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+public class OutboundQueueTest {
+
+    @Test
+    public void testHighWaterMark() {
+        var queue = new OutboundQueue(10);
+        Assertions.assertTrue(queue.offer(ByteBuffer.allocate(6)));
+        Assertions.assertFalse(queue.offer(ByteBuffer.allocate(6)));
+        Assertions.assertTrue(queue.offer(ByteBuffer.allocate(4)));
+        Assertions.assertEquals(10, queue.getQueuedBytes());
+
+        var batch = new ByteBuffer[8];
+        Assertions.assertEquals(2, queue.drainTo(batch));
+        Assertions.assertEquals(0, queue.getQueuedBytes());
+        Assertions.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testOversizedFrameFitsEmptyQueue() {
+        var queue = new OutboundQueue(10);
+        Assertions.assertTrue(queue.offer(ByteBuffer.allocate(32)));
+        Assertions.assertFalse(queue.offer(ByteBuffer.allocate(1)));
+    }
+}
@@ -0,0 +1,304 @@
+package com.cyr1en.voxx.commons.esal.events;
+
+import com.cyr1en.voxx.commons.esal.events.annotation.EventListener;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EventBusTest {
+
+    @Test
+    public void testRunAfterWaitsForListeners() throws Exception {
+        var eventBus = new EventBus(Executors.newFixedThreadPool(4));
+        var listener = new CountingListener();
+        eventBus.subscribeListeners(listener);
+
+        var countOnRunAfter = new AtomicInteger(-1);
+        eventBus.post("event", () -> countOnRunAfter.set(listener.count.get())).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(2, listener.count.get());
+        Assertions.assertEquals(2, countOnRunAfter.get());
+        eventBus.shutdown();
+    }
+
+    @Test
+    public void testRunAfterWithoutListeners() throws Exception {
+        var eventBus = new EventBus();
+        var ran = new AtomicInteger();
+        eventBus.post(42, ran::incrementAndGet).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, ran.get());
+        eventBus.shutdown();
+    }
+
+    @Test
+    public void testKeyedEventsKeepOrderPerKey() throws Exception {
+        var eventBus = new EventBus(Executors.newFixedThreadPool(8), 4);
+        var listener = new OrderListener();
+        eventBus.subscribeListeners(listener);
+
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < 1000; i++)
+            last = eventBus.post(new Keyed(i % 3, i));
+        last.get(5, TimeUnit.SECONDS);
+        eventBus.shutdown();
+        Assertions.assertTrue(eventBus.awaitTermination(5, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(1000, listener.received.size());
+        var lastSeen = new ConcurrentHashMap<Integer, Integer>();
+        for (var keyed : listener.received) {
+            var previous = lastSeen.put(keyed.key(), keyed.sequence());
+            if (previous != null) Assertions.assertTrue(previous < keyed.sequence(), "Events of a key ran out of order");
+        }
+    }
+
+    @Test
+    public void testSupertypeListeners() throws Exception {
+        var eventBus = new EventBus();
+        var listener = new AuditListener();
+        eventBus.subscribeListeners(listener);
+
+        eventBus.post(new Keyed(0, 0)).get(5, TimeUnit.SECONDS);
+        eventBus.post("event").get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(1, listener.keyed.get());
+        Assertions.assertEquals(2, listener.all.get());
+        eventBus.shutdown();
+    }
+
+    @Test
+    public void testUnsubscribeOnlyRemovesGivenListener() throws Exception {
+        var eventBus = new EventBus();
+        var first = new CountingListener();
+        var second = new CountingListener();
+        eventBus.subscribeListeners(first);
+        eventBus.subscribeListeners(second);
+        eventBus.unsubscribeListeners(first);
+
+        eventBus.post("event").get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(0, first.count.get());
+        Assertions.assertEquals(2, second.count.get());
+        eventBus.shutdown();
+    }
+
+    @Test
+    public void testPriorityOrder() throws Exception {
+        var eventBus = new EventBus();
+        var listener = new PriorityListener();
+        eventBus.subscribeListeners(listener);
+
+        eventBus.post(new Keyed(0, 0)).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals("high,normal,low", String.join(",", listener.order));
+        eventBus.shutdown();
+    }
+
+    @Test
+    public void testDropNewestOnFullLane() throws Exception {
+        var eventBus = new EventBus(Executors.newSingleThreadExecutor(), 1, 2);
+        eventBus.setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+        var gate = new CountDownLatch(1);
+        var listener = new GatedListener(gate);
+        eventBus.subscribeListeners(listener);
+
+        // The first event occupies the lane's thread, the next two fill the lane.
+        var first = eventBus.post(new Keyed(0, 0));
+        listener.started.await(5, TimeUnit.SECONDS);
+        eventBus.post(new Keyed(0, 1));
+        eventBus.post(new Keyed(0, 2));
+        var dropped = eventBus.post(new Keyed(0, 3));
+
+        Assertions.assertTrue(eventBus.isSaturated(0));
+        Assertions.assertEquals(2, eventBus.getQueueDepth());
+        Assertions.assertTrue(dropped.isCompletedExceptionally());
+        Assertions.assertEquals(1, eventBus.getRejectedCount());
+
+        gate.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        eventBus.shutdown();
+        Assertions.assertTrue(eventBus.awaitTermination(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(3, listener.handled.get());
+    }
+
+    @Test
+    public void testDropOldestOnlyAffectsFullKey() throws Exception {
+        var eventBus = new EventBus(Executors.newSingleThreadExecutor(), 1, 2);
+        eventBus.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+        var gate = new CountDownLatch(1);
+        var listener = new GatedListener(gate);
+        var order = new OrderListener();
+        eventBus.subscribeListeners(listener);
+        eventBus.subscribeListeners(order);
+
+        // Both keys share the only lane, key 0 fills its queue while key 1 still has room.
+        var first = eventBus.post(new Keyed(0, 0));
+        listener.started.await(5, TimeUnit.SECONDS);
+        var oldest = eventBus.post(new Keyed(0, 1));
+        eventBus.post(new Keyed(0, 2));
+        var other = eventBus.post(new Keyed(1, 0));
+        eventBus.post(new Keyed(0, 3));
+
+        Assertions.assertTrue(eventBus.isSaturated(0));
+        Assertions.assertFalse(eventBus.isSaturated(1));
+        Assertions.assertTrue(oldest.isCompletedExceptionally());
+        Assertions.assertFalse(other.isDone());
+
+        gate.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        other.get(5, TimeUnit.SECONDS);
+        eventBus.shutdown();
+        Assertions.assertTrue(eventBus.awaitTermination(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(List.of(new Keyed(0, 0), new Keyed(0, 2), new Keyed(1, 0), new Keyed(0, 3)),
+                List.copyOf(order.received));
+    }
+
+    @Test
+    public void testInvokerIsSpunInListenerClass() throws Throwable {
+        var eventBus = new EventBus();
+        var listener = new PrivateListener();
+        eventBus.subscribeListeners(listener);
+
+        // The private method is only reachable through a private lookup in the listener's class.
+        eventBus.post(new Keyed(0, 0)).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, listener.handled.get());
+
+        var method = PrivateListener.class.getDeclaredMethod("onKeyed", Keyed.class);
+        var listenerMethod = new EventBus.ListenerMethod(listener, method);
+        Assertions.assertEquals(EventBusTest.class, listenerMethod.getInvoker().getClass().getNestHost());
+        eventBus.shutdown();
+    }
+
+    @Test
+    public void testMethodHandleFallback() throws Throwable {
+        var listener = new OrderListener();
+        var invoker = EventBus.ListenerMethod.compileHandle(listener,
+                OrderListener.class.getMethod("onKeyed", Keyed.class));
+
+        invoker.invoke(new Keyed(0, 0));
+        Assertions.assertEquals(List.of(new Keyed(0, 0)), List.copyOf(listener.received));
+        Assertions.assertThrows(ClassCastException.class, () -> invoker.invoke("not keyed"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> EventBus.ListenerMethod.compileHandle(
+                new PrivateListener(), PrivateListener.class.getDeclaredMethod("onKeyed", Keyed.class)));
+    }
+
+    @Test
+    public void testThrowingListenerDoesNotStopOthers() throws Exception {
+        var eventBus = new EventBus();
+        var order = new OrderListener();
+        eventBus.subscribeListeners(new ThrowingListener());
+        eventBus.subscribeListeners(order);
+
+        eventBus.post(new Keyed(0, 0)).get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(List.of(new Keyed(0, 0)), List.copyOf(order.received));
+        Assertions.assertEquals(1, eventBus.getListenerFailureCount());
+        eventBus.shutdown();
+    }
+
+    public static class PrivateListener implements EventBus.Listener {
+        private final AtomicInteger handled = new AtomicInteger();
+
+        @EventListener
+        private void onKeyed(Keyed event) {
+            handled.incrementAndGet();
+        }
+    }
+
+    public static class ThrowingListener implements EventBus.Listener {
+        @EventListener(priority = 10)
+        public void onKeyed(Keyed event) {
+            throw new IllegalStateException("listener failure");
+        }
+    }
+
+    public static class GatedListener implements EventBus.Listener {
+        private final CountDownLatch gate;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final AtomicInteger handled = new AtomicInteger();
+
+        public GatedListener(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @EventListener
+        public void onKeyed(Keyed event) throws InterruptedException {
+            started.countDown();
+            gate.await();
+            handled.incrementAndGet();
+        }
+    }
+
+    public static class PriorityListener implements EventBus.Listener {
+        private final Queue<String> order = new ConcurrentLinkedQueue<>();
+
+        @EventListener(priority = -10)
+        public void onLow(Keyed event) {
+            order.add("low");
+        }
+
+        @EventListener
+        public void onNormal(Keyed event) {
+            order.add("normal");
+        }
+
+        @EventListener(priority = 10)
+        public void onHigh(KeyedEvent event) {
+            order.add("high");
+        }
+    }
+
+    public static class AuditListener implements EventBus.Listener {
+        private final AtomicInteger keyed = new AtomicInteger();
+        private final AtomicInteger all = new AtomicInteger();
+
+        @EventListener
+        public void onKeyed(KeyedEvent event) {
+            keyed.incrementAndGet();
+        }
+
+        @EventListener
+        public void onAny(Object event) {
+            all.incrementAndGet();
+        }
+    }
+
+    public record Keyed(int key, int sequence) implements KeyedEvent {
+        @Override
+        public Object dispatchKey() {
+            return key;
+        }
+    }
+
+    public static class OrderListener implements EventBus.Listener {
+        private final Queue<Keyed> received = new ConcurrentLinkedQueue<>();
+
+        @EventListener
+        public void onKeyed(Keyed event) {
+            received.add(event);
+        }
+    }
+
+    public static class CountingListener implements EventBus.Listener {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @EventListener
+        public void onFirst(String event) throws InterruptedException {
+            Thread.sleep(50);
+            count.incrementAndGet();
+        }
+
+        @EventListener
+        public void onSecond(String event) {
+            count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.cyr1en.voxx.commons.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testPercentilesWithinPrecision() {
+        var histogram = new Histogram();
+        for (long i = 1; i <= 10_000; i++)
+            histogram.record(i * 1000);
+
+        Assertions.assertEquals(10_000, histogram.getCount());
+        Assertions.assertEquals(10_000_000, histogram.getMax());
+        var p50 = histogram.getValueAtPercentile(50);
+        var p99 = histogram.getValueAtPercentile(99);
+        Assertions.assertTrue(p50 >= 5_000_000 && p50 <= 5_000_000 * 17 / 16, "p50 " + p50);
+        Assertions.assertTrue(p99 >= 9_900_000 && p99 <= 9_900_000 * 17 / 16, "p99 " + p99);
+        Assertions.assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testBucketsCoverWholeRange() {
+        for (var value : new long[]{0, 1, 15, 16, 17, 1023, 1024, Integer.MAX_VALUE, Long.MAX_VALUE}) {
+            var bucket = Histogram.bucketOf(value);
+            Assertions.assertTrue(Histogram.upperBoundOf(bucket) >= value, "value " + value);
+            Assertions.assertTrue(bucket == 0 || Histogram.upperBoundOf(bucket - 1) < value, "value " + value);
+        }
+        Assertions.assertEquals(0, new Histogram().getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,26 @@
+package com.cyr1en.voxx.commons.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testPrometheusFormat() {
+        var registry = new MetricsRegistry();
+        registry.counter("requests_total", "Requests.", "request", "sm").add(3);
+        Assertions.assertSame(registry.counter("requests_total", "Requests.", "request", "sm"),
+                registry.counter("requests_total", "Requests.", "request", "sm"));
+        registry.gauge("queue_depth", "Queued events.", () -> 7);
+        registry.timer("latency_seconds", "Latency.").record(2_000_000);
+
+        var out = new StringBuilder();
+        registry.writePrometheus(out);
+        var text = out.toString();
+        Assertions.assertTrue(text.contains("# TYPE requests_total counter\nrequests_total{request=\"sm\"} 3\n"), text);
+        Assertions.assertTrue(text.contains("queue_depth 7\n"), text);
+        Assertions.assertTrue(text.contains("# TYPE latency_seconds summary\n"), text);
+        Assertions.assertTrue(text.contains("latency_seconds_count 1\n"), text);
+        Assertions.assertTrue(text.contains("latency_seconds{quantile=\"0.99\"} 0.002"), text);
+    }
+}
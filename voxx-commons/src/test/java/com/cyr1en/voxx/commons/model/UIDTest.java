@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class UIDTest {
 
@@ -53,9 +54,52 @@ public class UIDTest {
         Assertions.assertEquals(nonUnique.size(), 0);
     }
 
+    @Test
+    public void testSequenceOverflowWaitsForNextMillisecond() {
+        var calls = new AtomicLong();
+        var start = UID.TIME_EPOCH + 1000;
+        // The clock only moves on after the sequence of the first millisecond ran out
+        var generator = new UID.Generator(0, 0, () -> calls.incrementAndGet() <= 4100 ? start : start + 1);
+        var last = generator.next().asLong();
+        for (int i = 0; i < 4096; i++) {
+            var next = generator.next().asLong();
+            Assertions.assertTrue(next > last);
+            last = next;
+        }
+        Assertions.assertEquals(start + 1, UID.of(last).getTimestamp());
+    }
+
+    @Test
+    public void testClockRollback() {
+        var now = new AtomicLong(UID.TIME_EPOCH + 5000);
+        var generator = new UID.Generator(0, 0, now::get);
+        var before = generator.next().asLong();
+        now.addAndGet(-1000);
+        var after = generator.next().asLong();
+        Assertions.assertTrue(after > before);
+    }
+
+    @Test
+    public void testNodeBits() {
+        var generator = new UID.Generator(5, 4);
+        var uid = generator.next();
+        Assertions.assertEquals(5, uid.getId() >> 8);
+        Assertions.assertEquals(uid, UID.of(uid.asLong()));
+    }
+
     @Test
     public void testStaticCreation() {
         var copy = UID.of(uid.asLong());
         Assertions.assertEquals(uid, copy);
     }
+
+    @Test
+    public void testLongHelpers() {
+        var raw = uid.asLong();
+        Assertions.assertEquals(uid.getTimestamp(), UID.timestampOf(raw));
+        Assertions.assertEquals(uid.getId(), UID.idOf(raw));
+        Assertions.assertEquals(uid.hashCode(), UID.hash(raw));
+        Assertions.assertEquals(uid.getTimestampString(), UID.formatTimestamp(raw));
+        Assertions.assertTrue(UID.compare(raw, UID.Generator.generateLong()) < 0);
+    }
 }
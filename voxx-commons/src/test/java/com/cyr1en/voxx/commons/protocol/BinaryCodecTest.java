@@ -0,0 +1,81 @@
+package com.cyr1en.voxx.commons.protocol;
+
+import com.cyr1en.voxx.commons.esal.LengthFrameDecoder;
+import com.cyr1en.voxx.commons.model.Message;
+import com.cyr1en.voxx.commons.model.UID;
+import com.cyr1en.voxx.commons.model.User;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+public class BinaryCodecTest {
+
+    private static byte[] payloadOf(ByteBuffer frame) throws IOException {
+        var payloads = new ArrayList<byte[]>();
+        new LengthFrameDecoder(BinaryCodec.MAX_FRAME_LENGTH).decode(frame.duplicate(), payloads::add);
+        Assertions.assertEquals(1, payloads.size());
+        return payloads.get(0);
+    }
+
+    @Test
+    public void testRequestRoundTrip() throws IOException {
+        var json = new JSONObject().put("request-id", "sm").put("params", new JSONObject().put("message", "a\nb"));
+        var request = BinaryCodec.decodeRequest(payloadOf(BinaryCodec.encodeRequest(json)));
+        Assertions.assertEquals("sm", request.requestId());
+        Assertions.assertEquals("a\nb", request.params().getString("message"));
+    }
+
+    @Test
+    public void testCorrelatedRegistration() throws IOException {
+        var json = new JSONObject().put("request-id", "ru").put("cid", 300)
+                .put("params", new JSONObject().put("uname", "cyr1en").put("mux", true));
+        var request = BinaryCodec.decodeRequest(payloadOf(BinaryCodec.encodeRequest(json)));
+        Assertions.assertEquals(300, request.correlationId());
+        Assertions.assertTrue(request.params().optBoolean("mux"));
+
+        var user = new User(UID.of(1234567890123L), "cyr1en");
+        var response = BinaryCodec.decodeMessage(payloadOf(BinaryCodec.INSTANCE.userRegistered(300, user, true, "abc")));
+        Assertions.assertEquals(300, response.getLong("cid"));
+        Assertions.assertTrue(response.getJSONObject("body").getBoolean("mux"));
+        Assertions.assertEquals("abc", response.getJSONObject("body").getString("token"));
+    }
+
+    @Test
+    public void testUpdateMatchesJson() throws IOException {
+        var sender = new User(UID.of(1234567890123L), "cyr1en");
+        var message = new Message(sender, "héllo", UID.of(1234567890124L));
+        var binary = BinaryCodec.decodeMessage(payloadOf(BinaryCodec.INSTANCE.newMessage(42, sender, message)));
+        var json = JsonCodec.INSTANCE.newMessage(42, sender, message);
+        var bytes = new byte[json.remaining() - 1];
+        json.get(bytes);
+        Assertions.assertTrue(new JSONObject(new String(bytes, StandardCharsets.UTF_8)).similar(binary));
+    }
+
+    @Test
+    public void testSplitFrames() throws IOException {
+        var frame = BinaryCodec.INSTANCE.usernameTaken(7, "x".repeat(300));
+        var decoder = new LengthFrameDecoder(BinaryCodec.MAX_FRAME_LENGTH);
+        var payloads = new ArrayList<byte[]>();
+        while (frame.hasRemaining()) {
+            var chunk = frame.slice(frame.position(), Math.min(7, frame.remaining()));
+            frame.position(frame.position() + chunk.remaining());
+            decoder.decode(chunk, payloads::add);
+        }
+        Assertions.assertEquals(1, payloads.size());
+        Assertions.assertEquals("x".repeat(300) + " is already taken",
+                BinaryCodec.decodeMessage(payloads.get(0)).getJSONObject("body").getString("message"));
+    }
+
+    @Test
+    public void testRejectsInvalidStringLength() {
+        var negative = new byte[]{BinaryCodec.SEND_MESSAGE, 0, -1, -1, -1, -1, -1, -1, -1, -1, -1, 0x01};
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decodeRequest(negative));
+        var tooLong = new byte[]{BinaryCodec.SEND_MESSAGE, 0, -128, -128, -128, -128, 0x10, 'a'};
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decodeRequest(tooLong));
+    }
+}
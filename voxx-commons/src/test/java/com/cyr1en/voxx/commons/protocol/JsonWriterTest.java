@@ -0,0 +1,46 @@
+package com.cyr1en.voxx.commons.protocol;
+
+import com.cyr1en.voxx.commons.model.UID;
+import com.cyr1en.voxx.commons.model.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class JsonWriterTest {
+
+    @Test
+    public void testEnvelope() {
+        var user = new User(UID.of(42), "cyr1en");
+        var json = JsonWriter.get().beginUpdate("nu").name("user").user(user).endEnvelope().toString();
+        Assertions.assertEquals("{\"update-message\":\"nu\",\"body\":{\"user\":{\"uid\":42,\"uname\":\"cyr1en\"}}}", json);
+    }
+
+    @Test
+    public void testArrayAndEscaping() {
+        var json = JsonWriter.get().beginResponse(1)
+                .name("values").beginArray().value(1).value("a\"b\n\u0001").value(true).endArray()
+                .endEnvelope().toString();
+        Assertions.assertEquals("{\"response-id\":1,\"body\":{\"values\":[1,\"a\\\"b\\n\\u0001\",true]}}", json);
+    }
+
+    @Test
+    public void testFrameIsUtf8Line() {
+        var writer = JsonWriter.get().beginObject().name("message").value("héllo 😀").endObject();
+        var frame = writer.toFrame();
+        var bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        Assertions.assertEquals(writer + "\n", new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testVirtualThreadsReuseWriters() throws InterruptedException {
+        var writers = new JsonWriter[2];
+        Thread.ofVirtual().start(() -> {
+            writers[0] = JsonWriter.get();
+            writers[0].beginObject().endObject().toFrame();
+        }).join();
+        Thread.ofVirtual().start(() -> writers[1] = JsonWriter.get()).join();
+        Assertions.assertSame(writers[0], writers[1]);
+    }
+}
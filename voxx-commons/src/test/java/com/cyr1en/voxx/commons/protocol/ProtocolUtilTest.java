@@ -0,0 +1,39 @@
+package com.cyr1en.voxx.commons.protocol;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ProtocolUtilTest {
+
+    @Test
+    public void testCompactKeepsStringContent() {
+        var json = """
+                {
+                  "message": "two  spaces",
+                  "uid": 1
+                }
+                """;
+        Assertions.assertEquals("{\"message\":\"two  spaces\",\"uid\":1}", ProtocolUtil.compact(json));
+    }
+
+    @Test
+    public void testCompactEscapesLineBreaksInStrings() {
+        Assertions.assertEquals("{\"message\":\"a\\nb\"}", ProtocolUtil.compact("{\"message\": \"a\nb\"}"));
+        Assertions.assertEquals("{\"message\":\"\\\"quoted\\\"\"}",
+                ProtocolUtil.compact("{\"message\": \"\\\"quoted\\\"\"}"));
+    }
+
+    @Test
+    public void testCompactReturnsCompactInput() {
+        var json = "{\"response-id\":1}";
+        Assertions.assertSame(json, ProtocolUtil.compact(json));
+    }
+
+    @Test
+    public void testFlattenIsSingleLine() {
+        var flat = ProtocolUtil.flattenJSONObject(new JSONObject().put("message", "line\nbreak  here"));
+        Assertions.assertFalse(flat.contains("\n"));
+        Assertions.assertEquals("line\nbreak  here", new JSONObject(flat).getString("message"));
+    }
+}
@@ -0,0 +1,253 @@
+package com.cyr1en.voxx.server;
+
+import com.cyr1en.voxx.commons.esal.ClientConnection;
+import com.cyr1en.voxx.commons.metrics.Histogram;
+import com.cyr1en.voxx.commons.model.User;
+import com.cyr1en.voxx.commons.protocol.JsonCodec;
+import com.cyr1en.voxx.commons.protocol.ProtocolUtil;
+import com.cyr1en.voxx.commons.protocol.WireCodec;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fans updates out to the supplemental (update) connections of all registered users.
+ * <p>
+ * Instead of scanning every client connection of the server, the broadcaster keeps its own index of
+ * supplemental connections by user. A broadcast serializes its payload once per wire format and hands
+ * the same frame to every recipient of that format, so the cost of a broadcast is one serialization plus one queued
+ * write per user. The index is a {@link ConcurrentHashMap}, so broadcasts don't need a global lock and
+ * can run concurrently with users joining and leaving.
+ * <p>
+ * Every update gets a sequence number and is kept in an {@link UpdateJournal}, so a client that resumes its
+ * session can be sent the updates it missed, see {@link #resume(User, ClientConnection, long)}. Only numbering
+ * an update is serialized, the fan-out itself runs outside the lock, so concurrent broadcasts can reach a
+ * connection in any order. Every subscriber therefore holds back an update until the ones numbered before it
+ * were sent, and each connection gets its updates in sequence order.
+ */
+public class Broadcaster {
+
+    private final ConcurrentHashMap<User, Subscriber> updateConnections;
+    private final UpdateJournal journal;
+    private final Histogram fanOutTime;
+    private final LongAdder sentUpdates;
+
+    /**
+     * Encodes an update for the clients of one wire format.
+     */
+    @FunctionalInterface
+    public interface UpdateEncoder {
+        /**
+         * @param codec the wire format to encode with.
+         * @param seq   sequence number of the update.
+         * @return the frame, or null to skip the clients of this codec.
+         */
+        ByteBuffer encode(WireCodec codec, long seq);
+    }
+
+    /**
+     * An update connection and the sequence number of the next update it has to get. Updates that
+     * arrive early are held back until the gap before them is filled. Every broadcast passes through
+     * every subscriber, even the ones it skips, so that gaps always get filled.
+     * <p>
+     * If a gap stays open for {@link #MAX_HELD_BACK} updates anyway, the connection is closed instead of
+     * holding back more. The client resumes its session and gets the updates it missed from the journal.
+     */
+    private static final class Subscriber {
+        private static final int MAX_HELD_BACK = 1024;
+
+        private final ClientConnection connection;
+        private long nextSeq;
+        // Updates that arrived before nextSeq, a null frame is an update this subscriber skips.
+        private HashMap<Long, ByteBuffer> heldBack;
+        private boolean dropped;
+
+        private Subscriber(ClientConnection connection, long nextSeq) {
+            this.connection = connection;
+            this.nextSeq = nextSeq;
+        }
+
+        /**
+         * @param seq   sequence number of the update.
+         * @param frame the frame to send, null if the subscriber doesn't get this update.
+         */
+        private synchronized void deliver(long seq, ByteBuffer frame) {
+            if (dropped || seq < nextSeq) return;
+            if (seq > nextSeq) {
+                if (heldBack == null) heldBack = new HashMap<>();
+                heldBack.put(seq, frame);
+                if (heldBack.size() > MAX_HELD_BACK) drop();
+                return;
+            }
+            // A failing send must not stop the updates after it
+            try {
+                send(frame);
+            } finally {
+                nextSeq++;
+            }
+            while (heldBack != null && heldBack.containsKey(nextSeq)) {
+                var held = heldBack.remove(nextSeq);
+                try {
+                    send(held);
+                } finally {
+                    nextSeq++;
+                }
+            }
+        }
+
+        private void drop() {
+            VoxxServer.LOGGER.warn("Update {} never reached {}, closing the connection", nextSeq, connection);
+            dropped = true;
+            heldBack = null;
+            connection.close();
+        }
+
+        private void send(ByteBuffer frame) {
+            if (frame != null && connection.isConnected()) connection.sendFrame(frame);
+        }
+    }
+
+    public Broadcaster() {
+        this(1024);
+    }
+
+    /**
+     * @param journalCapacity number of recent updates that are kept for resumed sessions.
+     */
+    public Broadcaster(int journalCapacity) {
+        this.updateConnections = new ConcurrentHashMap<>();
+        this.journal = new UpdateJournal(journalCapacity);
+        this.fanOutTime = new Histogram();
+        this.sentUpdates = new LongAdder();
+    }
+
+    /**
+     * Register the update connection of a user. A previous update connection of the same user is replaced.
+     *
+     * @param user       owner of the connection.
+     * @param connection the supplemental connection that receives the updates.
+     */
+    public void register(User user, ClientConnection connection) {
+        synchronized (journal) {
+            updateConnections.put(user, new Subscriber(connection, journal.getLastSeq() + 1));
+        }
+    }
+
+    /**
+     * Register the update connection of a resumed session and send it the journaled updates it missed.
+     * The replay and the registration happen atomically with respect to broadcasts, so the connection
+     * receives every update exactly once and the missed ones before any new ones.
+     *
+     * @param user       owner of the connection.
+     * @param connection the connection that receives the updates.
+     * @param lastSeq    sequence number of the last update the client received.
+     * @return false if some of the missed updates were no longer in the journal.
+     */
+    public boolean resume(User user, ClientConnection connection, long lastSeq) {
+        synchronized (journal) {
+            updateConnections.put(user, new Subscriber(connection, journal.getLastSeq() + 1));
+            return journal.replay(lastSeq, user, connection);
+        }
+    }
+
+    /**
+     * Remove the update connection of a user, if it is still the registered one.
+     *
+     * @param user       owner of the connection.
+     * @param connection the connection to remove.
+     */
+    public void unregister(User user, ClientConnection connection) {
+        updateConnections.computeIfPresent(user, (u, subscriber) -> subscriber.connection == connection ? null : subscriber);
+    }
+
+    public Collection<ClientConnection> getUpdateConnections() {
+        return updateConnections.values().stream().map(subscriber -> subscriber.connection).toList();
+    }
+
+    /**
+     * @return nanoseconds it took to encode and queue each broadcast for all of its recipients.
+     */
+    public Histogram getFanOutTime() {
+        return fanOutTime;
+    }
+
+    /**
+     * @return amount of update frames queued by broadcasts, one per recipient.
+     */
+    public long getSentUpdates() {
+        return sentUpdates.sum();
+    }
+
+    /**
+     * @return sequence number of the most recent update.
+     */
+    public long getLastSeq() {
+        synchronized (journal) {
+            return journal.getLastSeq();
+        }
+    }
+
+    /**
+     * Send an update to every registered JSON client except one. Clients that negotiated another
+     * wire format don't receive it.
+     *
+     * @param excludedUser user that should not receive the update, may be null.
+     * @param object       the update to send.
+     */
+    public void broadcast(User excludedUser, JSONObject object) {
+        var frame = ProtocolUtil.encodeFrame(object);
+        broadcast(excludedUser, (codec, seq) -> codec == JsonCodec.INSTANCE ? frame : null);
+    }
+
+    /**
+     * Send an update to every registered user except one. The update is encoded once for every
+     * {@link WireCodec} that is in use, and the same frame is sent to all clients of that codec.
+     *
+     * @param excludedUser user that should not receive the update, may be null.
+     * @param encoder      encodes the update with a codec, like {@code (codec, seq) -> codec.newUser(seq, user)}.
+     *                     It may return null to skip the clients of a codec.
+     */
+    public void broadcast(User excludedUser, UpdateEncoder encoder) {
+        var start = System.nanoTime();
+        long seq;
+        synchronized (journal) {
+            seq = journal.append(excludedUser, encoder);
+        }
+        var frames = new IdentityHashMap<WireCodec, Optional<ByteBuffer>>(4);
+        updateConnections.forEach((user, subscriber) -> {
+            var connection = subscriber.connection;
+            try {
+                if (user == excludedUser || !connection.isConnected()) {
+                    subscriber.deliver(seq, null);
+                    return;
+                }
+                var frame = frames.computeIfAbsent(connection.getCodec(), codec -> encode(encoder, codec, seq));
+                subscriber.deliver(seq, frame.orElse(null));
+                if (frame.isPresent()) sentUpdates.increment();
+            } catch (RuntimeException e) {
+                // The other subscribers still get the update
+                VoxxServer.LOGGER.error("Could not send update " + seq + " to " + connection, e);
+            }
+        });
+        fanOutTime.recordSince(start);
+    }
+
+    /**
+     * Encode an update for one codec. A failing encoder only skips the update, every subscriber still
+     * has to see its sequence number pass.
+     */
+    private static Optional<ByteBuffer> encode(UpdateEncoder encoder, WireCodec codec, long seq) {
+        try {
+            return Optional.ofNullable(encoder.encode(codec, seq));
+        } catch (RuntimeException e) {
+            VoxxServer.LOGGER.error("Could not encode update " + seq, e);
+            return Optional.empty();
+        }
+    }
+}
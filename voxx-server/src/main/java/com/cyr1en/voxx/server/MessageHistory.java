@@ -0,0 +1,156 @@
+package com.cyr1en.voxx.server;
+
+import com.cyr1en.voxx.commons.model.Message;
+import com.cyr1en.voxx.commons.model.UID;
+import com.cyr1en.voxx.commons.model.User;
+import com.cyr1en.voxx.commons.protocol.JsonCodec;
+import com.cyr1en.voxx.commons.protocol.WireCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded history of the most recent chat messages, so clients that join or reconnect can catch up.
+ * <p>
+ * The history is a lock-free ring buffer: appending claims a slot with a single compare-and-set and
+ * overwrites whatever was there, readers scan the slots without blocking writers. A message is stored
+ * as the "nm" update frame clients already understand, encoded when it is appended and once more for
+ * every other wire format the first time a client of that format asks for it.
+ * <p>
+ * A slot that was claimed but not written yet is skipped by readers, so a message that is being
+ * appended concurrently with a read may show up in the next read only.
+ * <p>
+ * Readers page through the history by UID, so slots have to be in UID order. A new message therefore
+ * gets its UID as part of claiming its slot, see {@link #append(User, String)}.
+ */
+public class MessageHistory {
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong next;
+
+    public MessageHistory(int capacity) {
+        this.slots = new AtomicReferenceArray<>(Math.max(1, capacity));
+        this.next = new AtomicLong();
+    }
+
+    /**
+     * A message in the history, with its frames cached per wire format.
+     */
+    public static class Entry {
+        private final long index;
+        private final User sender;
+        private final Message message;
+        private final AtomicReference<CachedFrame> frames;
+
+        private record CachedFrame(WireCodec codec, ByteBuffer frame, CachedFrame next) {
+        }
+
+        private Entry(long index, User sender, Message message) {
+            this.index = index;
+            this.sender = sender;
+            this.message = message;
+            this.frames = new AtomicReference<>();
+            frame(JsonCodec.INSTANCE);
+        }
+
+        public long getUID() {
+            return message.getUIDAsLong();
+        }
+
+        /**
+         * @return position of the message in the history, consecutive for consecutive messages.
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        public Message getMessage() {
+            return message;
+        }
+
+        /**
+         * @param codec wire format of the client.
+         * @return the message as a "nm" update frame without a sequence number.
+         */
+        public ByteBuffer frame(WireCodec codec) {
+            for (var cached = frames.get(); cached != null; cached = cached.next())
+                if (cached.codec() == codec) return cached.frame();
+            var frame = codec.newMessage(0, sender, message);
+            // Two threads may encode the same format at once, either frame is fine.
+            frames.updateAndGet(head -> new CachedFrame(codec, frame, head));
+            return frame;
+        }
+    }
+
+    /**
+     * Create a message with a new UID and add it, replacing the oldest one if the history is full.
+     * <p>
+     * The UID is generated after reading the next free index and the index is only claimed if no other
+     * message took it in the meantime. Whoever claimed the index before generated its UID before that,
+     * so UIDs increase with the index without any lock.
+     *
+     * @param sender  the user that sent the message.
+     * @param content the text of the message.
+     * @return the entry of the new message.
+     */
+    public Entry append(User sender, String content) {
+        long index;
+        long uid;
+        do {
+            index = next.get();
+            uid = UID.Generator.generateLong();
+        } while (!next.compareAndSet(index, index + 1));
+        var entry = new Entry(index, sender, new Message(sender, content, uid));
+        slots.set(slot(index), entry);
+        return entry;
+    }
+
+    /**
+     * Add a message that already has a UID, like one restored from the message log. Must not be called
+     * concurrently with {@link #append(User, String)}, and messages have to be restored oldest first.
+     *
+     * @param sender  the user that sent the message.
+     * @param message the message.
+     */
+    public void restore(User sender, Message message) {
+        var index = next.getAndIncrement();
+        slots.set(slot(index), new Entry(index, sender, message));
+    }
+
+    /**
+     * @return index the next appended message will get.
+     */
+    public long getNextIndex() {
+        return next.get();
+    }
+
+    /**
+     * Get the messages after a message, oldest first.
+     *
+     * @param sinceUid UID of the last message the client has, 0 for the whole history.
+     * @param limit    maximum number of messages to return.
+     * @return up to {@code limit} messages with a UID greater than {@code sinceUid}.
+     */
+    public List<Entry> since(long sinceUid, int limit) {
+        var end = next.get();
+        var result = new ArrayList<Entry>(Math.min(limit, 64));
+        for (var index = Math.max(0, end - slots.length()); index < end && result.size() < limit; index++) {
+            var entry = slots.get(slot(index));
+            if (entry == null || entry.index != index) continue;
+            if (entry.getUID() > sinceUid) result.add(entry);
+        }
+        return result;
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    private int slot(long index) {
+        return (int) (index % slots.length());
+    }
+}
@@ -0,0 +1,173 @@
+package com.cyr1en.voxx.server;
+
+import com.cyr1en.voxx.commons.esal.ClientConnection;
+import com.cyr1en.voxx.commons.model.User;
+
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the sessions of registered users alive for a grace period after their connection dropped.
+ * <p>
+ * Registering a user opens a session with a random resume token that is sent to the client. When the
+ * connection of the user drops, the user stays registered and nobody is told that it left. If the
+ * client comes back with the token within the grace period it continues as the same {@link User},
+ * otherwise the session expires and the other users get a "ud" update as before.
+ */
+public class SessionManager {
+
+    private final VoxxServer server;
+    private final ConcurrentHashMap<String, Session> byToken;
+    private final ConcurrentHashMap<User, Session> byUser;
+    private final ScheduledExecutorService scheduler;
+    private final SecureRandom random;
+    private long gracePeriod;
+
+    public static class Session {
+        private final User user;
+        private final String token;
+        private final long joinedSeq;
+        private ClientConnection connection;
+        private ScheduledFuture<?> expiry;
+        private boolean expired;
+
+        private Session(User user, String token, long joinedSeq, ClientConnection connection) {
+            this.user = user;
+            this.token = token;
+            this.joinedSeq = joinedSeq;
+            this.connection = connection;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        /**
+         * @return sequence number of the last update before the user registered.
+         */
+        public long getJoinedSeq() {
+            return joinedSeq;
+        }
+    }
+
+    public SessionManager(VoxxServer server) {
+        this.server = server;
+        this.byToken = new ConcurrentHashMap<>();
+        this.byUser = new ConcurrentHashMap<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "voxx-sessions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.random = new SecureRandom();
+        this.gracePeriod = 30000;
+    }
+
+    /**
+     * Set how long the session of a disconnected user is kept. With 0 users are removed as soon as
+     * their connection drops.
+     *
+     * @param gracePeriod grace period in milliseconds.
+     */
+    public void setGracePeriod(long gracePeriod) {
+        this.gracePeriod = gracePeriod;
+    }
+
+    public long getGracePeriod() {
+        return gracePeriod;
+    }
+
+    /**
+     * Open the session of a newly registered user.
+     *
+     * @param user       the registered user.
+     * @param connection connection the user registered on.
+     * @return the new session.
+     */
+    public Session open(User user, ClientConnection connection) {
+        var bytes = new byte[16];
+        random.nextBytes(bytes);
+        var session = new Session(user, HexFormat.of().formatHex(bytes), server.getBroadcaster().getLastSeq(),
+                connection);
+        byToken.put(session.token, session);
+        byUser.put(user, session);
+        return session;
+    }
+
+    /**
+     * Move a session to a new connection. If the previous connection of the session is still open,
+     * it is closed without ending the session.
+     *
+     * @param token      resume token of the session.
+     * @param connection the new connection.
+     * @return the session, or null if there is no session with that token or it expired.
+     */
+    public Session resume(String token, ClientConnection connection) {
+        var session = byToken.get(token);
+        if (session == null) return null;
+        ClientConnection previous;
+        synchronized (session) {
+            if (session.expired) return null;
+            if (session.expiry != null) session.expiry.cancel(false);
+            session.expiry = null;
+            previous = session.connection;
+            session.connection = connection;
+        }
+        server.getUserRegistry().attach(session.user, connection);
+        if (previous != null && previous != connection) {
+            server.getBroadcaster().unregister(session.user, previous);
+            previous.clearAssocUser();
+            previous.close();
+        }
+        return session;
+    }
+
+    /**
+     * Called when the main connection of a user dropped. The session expires after the grace
+     * period unless it is resumed on another connection first.
+     *
+     * @param user       user of the connection.
+     * @param connection the connection that dropped.
+     */
+    public void detach(User user, ClientConnection connection) {
+        var session = byUser.get(user);
+        if (session == null) {
+            server.removeUser(user);
+            return;
+        }
+        synchronized (session) {
+            if (session.connection != connection) return;
+            session.connection = null;
+            server.getUserRegistry().detach(user, connection);
+            if (gracePeriod > 0) {
+                session.expiry = scheduler.schedule(() -> expire(session), gracePeriod, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        expire(session);
+    }
+
+    private void expire(Session session) {
+        synchronized (session) {
+            if (session.expired || Objects.nonNull(session.connection)) return;
+            session.expired = true;
+        }
+        byToken.remove(session.token);
+        byUser.remove(session.user, session);
+        server.removeUser(session.user);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
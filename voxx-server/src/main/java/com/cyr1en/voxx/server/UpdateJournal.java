@@ -0,0 +1,61 @@
+package com.cyr1en.voxx.server;
+
+import com.cyr1en.voxx.commons.esal.ClientConnection;
+import com.cyr1en.voxx.commons.model.User;
+
+/**
+ * Bounded log of the most recent updates, numbered with consecutive sequence numbers.
+ * <p>
+ * When a client resumes its session, the updates it missed while it was disconnected are replayed
+ * from the journal. The journal keeps the encoder of an update rather than its frames, so a replay
+ * can encode the update for whatever wire format the new connection negotiated. Once the journal is
+ * full the oldest update is overwritten. The journal is not thread safe, {@link Broadcaster} guards it.
+ */
+class UpdateJournal {
+
+    private final Entry[] entries;
+    private long lastSeq;
+
+    private record Entry(long seq, User excludedUser, Broadcaster.UpdateEncoder encoder) {
+    }
+
+    UpdateJournal(int capacity) {
+        this.entries = new Entry[Math.max(0, capacity)];
+    }
+
+    /**
+     * Add an update to the journal.
+     *
+     * @return the sequence number of the update.
+     */
+    long append(User excludedUser, Broadcaster.UpdateEncoder encoder) {
+        var seq = ++lastSeq;
+        if (entries.length > 0) entries[(int) (seq % entries.length)] = new Entry(seq, excludedUser, encoder);
+        return seq;
+    }
+
+    long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Send every journaled update after a sequence number to a connection, except the ones the user
+     * was excluded from.
+     *
+     * @param afterSeq   last sequence number the client received.
+     * @param user       user of the connection.
+     * @param connection connection to send the updates to.
+     * @return false if some of the updates were already overwritten and could not be replayed.
+     */
+    boolean replay(long afterSeq, User user, ClientConnection connection) {
+        var oldest = Math.max(1, lastSeq - entries.length + 1);
+        var from = Math.max(afterSeq + 1, oldest);
+        for (var seq = from; seq <= lastSeq; seq++) {
+            var entry = entries[(int) (seq % entries.length)];
+            if (entry.excludedUser() == user) continue;
+            var frame = entry.encoder().encode(connection.getCodec(), seq);
+            if (frame != null) connection.sendFrame(frame);
+        }
+        return afterSeq + 1 >= oldest;
+    }
+}
@@ -0,0 +1,115 @@
+package com.cyr1en.voxx.server;
+
+import com.cyr1en.voxx.commons.esal.ClientConnection;
+import com.cyr1en.voxx.commons.model.UID;
+import com.cyr1en.voxx.commons.model.User;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registered users, indexed by username and by UID, with the main connection of each user.
+ * <p>
+ * The registry has no lock of its own. Registering a user is a single {@link ConcurrentHashMap#computeIfAbsent}
+ * on the username, which only generates a UID if the name is free. That call holds the lock of the map bin
+ * of the username while the user is created, so two clients racing for the same name can't both get it.
+ * Registrations of names in other bins don't wait on each other, which keeps a burst of logins after a
+ * restart from queueing up on one lock.
+ * <p>
+ * The UID index is updated after the username is claimed and cleared before the username is released,
+ * so a user found by UID is always still registered under its username. A lookup by UID may briefly miss
+ * a user that is being registered, and a lookup by username may briefly return one that is being removed.
+ */
+public class UserRegistry {
+
+    private final ConcurrentHashMap<String, User> byName;
+    private final ConcurrentHashMap<Long, User> byUid;
+    private final ConcurrentHashMap<Long, ClientConnection> connections;
+
+    public UserRegistry() {
+        this.byName = new ConcurrentHashMap<>();
+        this.byUid = new ConcurrentHashMap<>();
+        this.connections = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Register a user under a username that isn't taken yet.
+     *
+     * @param username the username.
+     * @param connection main connection of the user.
+     * @return the new user, or null if the username is already registered.
+     */
+    public User registerNewUser(String username, ClientConnection connection) {
+        // The UID is only generated once the name turned out to be free, rejected names don't use up UIDs.
+        var created = new User[1];
+        var user = byName.computeIfAbsent(username, name -> created[0] = new User(UID.Generator.generateLong(), name));
+        if (user != created[0]) return null;
+        byUid.put(user.getUIDAsLong(), user);
+        attach(user, connection);
+        return user;
+    }
+
+    /**
+     * Remove a user, if it is still the one registered under its username.
+     *
+     * @param user the user to remove.
+     * @return true if the user was removed.
+     */
+    public boolean remove(User user) {
+        if (!byUid.remove(user.getUIDAsLong(), user)) return false;
+        connections.remove(user.getUIDAsLong());
+        byName.remove(user.getUsername(), user);
+        return true;
+    }
+
+    /**
+     * Make a connection the main connection of a user, e.g. when its session is resumed.
+     */
+    public void attach(User user, ClientConnection connection) {
+        connections.put(user.getUIDAsLong(), connection);
+    }
+
+    /**
+     * Forget the main connection of a user, unless another connection was attached in the meantime.
+     */
+    public void detach(User user, ClientConnection connection) {
+        connections.remove(user.getUIDAsLong(), connection);
+    }
+
+    public boolean isRegistered(String username) {
+        return byName.containsKey(username);
+    }
+
+    /**
+     * @return the user with that username, or null.
+     */
+    public User getUser(String username) {
+        return byName.get(username);
+    }
+
+    /**
+     * @return the user with that UID, or null.
+     */
+    public User getUser(long uid) {
+        return byUid.get(uid);
+    }
+
+    /**
+     * @return the main connection of a user, or null while it is disconnected.
+     */
+    public ClientConnection getConnection(User user) {
+        return connections.get(user.getUIDAsLong());
+    }
+
+    /**
+     * @return unmodifiable live view of the registered users.
+     */
+    public Collection<User> getUsers() {
+        return Collections.unmodifiableCollection(byName.values());
+    }
+
+    public int size() {
+        return byName.size();
+    }
+}
@@ -2,28 +2,46 @@ package com.cyr1en.voxx.server;
 
 import com.cyr1en.voxx.commons.esal.ClientConnection;
 import com.cyr1en.voxx.commons.esal.Server;
+import com.cyr1en.voxx.commons.esal.SlowConsumerPolicy;
+import com.cyr1en.voxx.commons.esal.ThreadMode;
 import com.cyr1en.voxx.commons.esal.events.EventBus;
+import com.cyr1en.voxx.commons.esal.events.OverflowPolicy;
 import com.cyr1en.voxx.commons.esal.events.annotation.EventListener;
 import com.cyr1en.voxx.commons.esal.events.server.ClientConnectEvent;
 import com.cyr1en.voxx.commons.esal.events.server.ClientDisconnectEvent;
 import com.cyr1en.voxx.commons.esal.events.server.ClientMessageEvent;
+import com.cyr1en.voxx.commons.model.Message;
 import com.cyr1en.voxx.commons.model.UID;
 import com.cyr1en.voxx.commons.model.User;
-import com.cyr1en.voxx.commons.protocol.ProtocolUtil;
+import com.cyr1en.voxx.commons.protocol.BinaryCodec;
+import com.cyr1en.voxx.commons.protocol.RequestEnvelope;
 import com.cyr1en.voxx.server.command.CommandListener;
+import com.cyr1en.voxx.server.metrics.MetricsEndpoint;
+import com.cyr1en.voxx.server.metrics.ServerMetrics;
+import com.cyr1en.voxx.server.persistence.MessageLog;
 import com.cyr1en.voxx.server.protocol.ProtocolHandler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class VoxxServer extends Server implements EventBus.Listener {
 
     private final UserRegistry userRegistry;
+    private final Broadcaster broadcaster;
+    private final SessionManager sessionManager;
+    private final MessageHistory messageHistory;
+    private final MessageLog messageLog;
+    private final ServerMetrics metrics;
+    private final MetricsEndpoint metricsEndpoint;
     private final ProtocolHandler protocolHandler;
     private final CommandListener commandListener;
     private final ExecutorService abstarctionLayerExecutor;
@@ -32,9 +50,28 @@ public class VoxxServer extends Server implements EventBus.Listener {
 
     public VoxxServer() {
         super(8008, 500);
-        getEventBus().setExecutorServiceSupplier(Executors::newCachedThreadPool);
+        var nodeBits = Integer.getInteger("voxx.node.bits", 0);
+        if (nodeBits > 0)
+            UID.Generator.setDefault(new UID.Generator(Integer.getInteger("voxx.node.id", 0), nodeBits));
+        setTransport(Transport.valueOf(System.getProperty("voxx.transport", "blocking").toUpperCase()));
+        setFramingUpgrade(BinaryCodec.PREAMBLE);
+        setThreadMode(ThreadMode.valueOf(System.getProperty("voxx.threads", "platform").toUpperCase()));
+        setOutboundHighWaterMark(Long.getLong("voxx.outbound.limit", 4 * 1024 * 1024));
+        setSlowConsumerPolicy(SlowConsumerPolicy.valueOf(System.getProperty("voxx.outbound.policy", "disconnect")
+                .toUpperCase()));
+        getEventBus().setExecutorService(getThreadMode().newExecutor("voxx-listener-"));
+        getEventBus().setQueueCapacity(Integer.getInteger("voxx.queue.capacity", 1024));
+        getEventBus().setOverflowPolicy(OverflowPolicy.valueOf(System.getProperty("voxx.queue.overflow", "block")
+                .toUpperCase()));
         getEventBus().subscribeListeners(this);
         this.userRegistry = new UserRegistry();
+        this.broadcaster = new Broadcaster(Integer.getInteger("voxx.resume.journal", 1024));
+        this.sessionManager = new SessionManager(this);
+        sessionManager.setGracePeriod(Long.getLong("voxx.resume.grace", 30000));
+        this.messageHistory = new MessageHistory(Integer.getInteger("voxx.history.capacity", 1000));
+        this.messageLog = openMessageLog();
+        this.metrics = new ServerMetrics(this);
+        this.metricsEndpoint = openMetricsEndpoint();
         this.commandListener = new CommandListener(this);
         this.protocolHandler = new ProtocolHandler(this);
 
@@ -45,16 +82,77 @@ public class VoxxServer extends Server implements EventBus.Listener {
         commandListener.run();
     }
 
-    public synchronized void broadcastWithExclusions(User excludedUser, JSONObject object) {
-        LOGGER.info("Broadcasting {}", object.getString("update-message"));
-        for (ClientConnection cc : getClientConnections()) {
-            if (Objects.isNull(cc) || cc.getAssocUser() == null) continue;
+    /**
+     * Open the message log if a directory for it is configured, and fill the message history with
+     * the newest messages from it.
+     *
+     * @return the log, or null if messages are not persisted.
+     */
+    private MessageLog openMessageLog() {
+        var directory = System.getProperty("voxx.log.dir");
+        if (directory == null) return null;
+        var log = new MessageLog(Path.of(directory));
+        log.setSegmentSize(Integer.getInteger("voxx.log.segment", 64 * 1024 * 1024));
+        log.setRetention(Duration.ofHours(Long.getLong("voxx.log.retention", 7 * 24)));
+        try {
+            log.open();
+        } catch (IOException e) {
+            LOGGER.error("Could not open the message log, messages won't be persisted", e);
+            return null;
+        }
+        log.tail(messageHistory.getCapacity()).forEach(logged -> {
+            var sender = logged.toSender();
+            messageHistory.restore(sender, logged.toMessage(sender));
+        });
+        log.setNextSequence(messageHistory.getNextIndex());
+        return log;
+    }
 
-            if (!cc.getAssocUser().equals(excludedUser) && cc.isSupplementalConnection())
-                cc.sendMessage(ProtocolUtil.flattenJSONObject(object));
+    /**
+     * Serve the metrics on the local port from {@code voxx.metrics.port}, unless it is 0 or less.
+     *
+     * @return the endpoint, or null if metrics are not served.
+     */
+    private MetricsEndpoint openMetricsEndpoint() {
+        var port = Integer.getInteger("voxx.metrics.port", 9108);
+        if (port <= 0) return null;
+        try {
+            var endpoint = new MetricsEndpoint(metrics, port);
+            endpoint.start();
+            return endpoint;
+        } catch (IOException e) {
+            LOGGER.warn("Could not serve metrics on port {}: {}", port, e.getMessage());
+            return null;
         }
     }
 
+    /**
+     * Create a message with a new UID and add it to the history and to the message log, if there is one.
+     * <p>
+     * The history hands out the UID together with the slot of the message, so the history is in UID order
+     * without a lock. Paging the history by UID relies on that: a message whose UID was generated earlier
+     * but appended later would be skipped by a client that already paged past a newer one. The message log
+     * gets the index of the message in the history, so it can write the messages in the same order.
+     *
+     * @param sender  the user that sent the message.
+     * @param content the text of the message.
+     * @return the message.
+     */
+    public Message acceptMessage(User sender, String content) {
+        var entry = messageHistory.append(sender, content);
+        if (messageLog != null) messageLog.append(sender, entry.getMessage(), entry.getIndex());
+        return entry.getMessage();
+    }
+
+    public void broadcastWithExclusions(User excludedUser, JSONObject object) {
+        LOGGER.debug("Broadcasting {}", object.getString("update-message"));
+        broadcaster.broadcast(excludedUser, object);
+    }
+
+    public void broadcastWithExclusions(User excludedUser, Broadcaster.UpdateEncoder encoder) {
+        broadcaster.broadcast(excludedUser, encoder);
+    }
+
     @EventListener
     public void onClientConnect(ClientConnectEvent event) {
         LOGGER.info("New client ({}) connected", event.clientConnection().getRemoteAddress());
@@ -62,13 +160,34 @@ public class VoxxServer extends Server implements EventBus.Listener {
 
     @EventListener
     public void onClientMessage(ClientMessageEvent event) {
+        var connection = event.getClientConnection();
+        var msg = event.getMessage();
+        if (BinaryCodec.PREAMBLE.equals(msg)) {
+            switchToBinary(connection);
+            return;
+        }
+        RequestEnvelope request;
+        try {
+            request = event.isBinary() ? BinaryCodec.decodeRequest(event.getPayload()) : RequestEnvelope.parse(msg);
+        } catch (JSONException | IllegalArgumentException e) {
+            LOGGER.info("Malformed request from ({})", connection.getRemoteAddress());
+            return;
+        }
         // Ignore if this is a supplemental connection
-        var isPing = event.getMessage().contains("{\"request-id\": \"ping\"}");
-        if (event.getClientConnection().isSupplementalConnection() && !isPing) return;
+        if (connection.isSupplementalConnection() && !request.is("ping")) return;
 
-        var msg = event.getMessage();
-        LOGGER.info("Client said: " + msg);
-        protocolHandler.handOnMessage(event);
+        LOGGER.debug("Client said: {}", event.isBinary() ? request : msg);
+        protocolHandler.handOnMessage(event, request);
+    }
+
+    /**
+     * Answer the binary handshake of a client. The transport already switched the input of the
+     * connection to length prefixed frames when it read the preamble.
+     */
+    private void switchToBinary(ClientConnection connection) {
+        connection.setCodec(BinaryCodec.INSTANCE);
+        connection.sendFrame(ClientConnection.encodeFrame(BinaryCodec.PREAMBLE));
+        LOGGER.info("Client ({}) switched to the binary protocol", connection.getRemoteAddress());
     }
 
     @EventListener
@@ -76,61 +195,77 @@ public class VoxxServer extends Server implements EventBus.Listener {
         var isSupplementalClient = event.clientConnection().isSupplementalConnection();
         LOGGER.info("Client ({}) disconnected {}", event.clientConnection().getRemoteAddress(),
                 isSupplementalClient ? "[S]" : "");
-        if (isSupplementalClient || event.clientConnection().getAssocUser() == null) return;
-
         var user = event.clientConnection().getAssocUser();
-        userRegistry.userMap.remove(user.getUsername());
-        var responseJson = new JSONObject();
-        responseJson.put("update-message", "ud");
-        var body = new JSONObject().put("user", new JSONObject().put("uid", user.getUID().asLong())
-                .put("uname", user.getUsername()));
-        responseJson.put("body", body);
-        broadcastWithExclusions(user, responseJson);
+        if (user == null) return;
+        // Removes the update connection of supplemental and multiplexed clients alike.
+        broadcaster.unregister(user, event.clientConnection());
+        if (isSupplementalClient) return;
+
+        // The user stays registered until its session expires, it may resume on another connection.
+        sessionManager.detach(user, event.clientConnection());
+    }
+
+    /**
+     * Remove a user from the registry and let everyone else know that it left.
+     *
+     * @param user the user to remove.
+     */
+    public void removeUser(User user) {
+        if (!userRegistry.remove(user)) return;
+        broadcastWithExclusions(user, (codec, seq) -> codec.userDisconnected(seq, user));
     }
 
     public void close() {
         if (commandListener != null && commandListener.isRunning())
             commandListener.stop();
 
+        if (sessionManager != null)
+            sessionManager.shutdown();
+
+        if (messageLog != null)
+            messageLog.close();
+
+        if (metricsEndpoint != null)
+            metricsEndpoint.close();
+
         if (abstarctionLayerExecutor != null && !abstarctionLayerExecutor.isShutdown())
             abstarctionLayerExecutor.shutdownNow();
 
         var connections = getClientConnections();
-        if (Objects.isNull(connections) || connections.isEmpty()) return;
-        getClientConnections().forEach(ClientConnection::close);
+        if (Objects.nonNull(connections) && !connections.isEmpty())
+            List.copyOf(connections.getAll()).forEach(ClientConnection::close);
+        getEventBus().shutdown();
     }
 
-    public UserRegistry getUserRegistry() {
-        return this.userRegistry;
+    public ProtocolHandler getProtocolHandler() {
+        return protocolHandler;
     }
 
-    public static class UserRegistry {
-        /**
-         * It is pretty redundant to have the username as a key for this map since the User encapsulates this data type.
-         * However, to mitigate {@link java.util.ConcurrentModificationException} across multiple client threads.
-         * I've decided to opt with using a {@link ConcurrentHashMap} for faster user CRUD.
-         */
-        private final ConcurrentHashMap<String, User> userMap;
+    public Broadcaster getBroadcaster() {
+        return broadcaster;
+    }
 
-        public UserRegistry() {
-            userMap = new ConcurrentHashMap<>();
-        }
+    public SessionManager getSessionManager() {
+        return sessionManager;
+    }
 
-        public synchronized User registerNewUser(String username) {
-            if (isRegistered(username)) return null;
-            var uid = UID.Generator.generate();
-            var user = new User(uid, username);
-            userMap.put(username, user);
-            return user;
-        }
+    public MessageHistory getMessageHistory() {
+        return messageHistory;
+    }
 
-        public synchronized boolean isRegistered(String username) {
-            return userMap.containsKey(username);
-        }
+    /**
+     * @return the message log, or null if messages are not persisted.
+     */
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
 
-        public ConcurrentHashMap<String, User> getUserMap() {
-            return userMap;
-        }
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public UserRegistry getUserRegistry() {
+        return this.userRegistry;
     }
 
 }
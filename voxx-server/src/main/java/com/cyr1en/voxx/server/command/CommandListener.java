@@ -20,6 +20,8 @@ public class CommandListener implements Runnable {
             in.close();
             voxxServer.close();
             System.exit(0);
+        } else if (command.equalsIgnoreCase("stats")) {
+            VoxxServer.LOGGER.info("Server stats:\n" + voxxServer.getMetrics().toSummary());
         }
     }
 
@@ -0,0 +1,63 @@
+package com.cyr1en.voxx.server.metrics;
+
+import com.cyr1en.voxx.server.VoxxServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the {@link ServerMetrics} in the Prometheus text format on {@code /metrics}.
+ * <p>
+ * The endpoint only listens on the loopback interface, so it is reachable by a scraper running on the
+ * same machine but not by chat clients. Requests are answered by the single thread of the HTTP server,
+ * scrapes are rare enough that they don't need more.
+ */
+public class MetricsEndpoint implements AutoCloseable {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final ServerMetrics metrics;
+    private final HttpServer httpServer;
+
+    /**
+     * @param metrics the metrics to serve.
+     * @param port    local port to listen on.
+     * @throws IOException if the port could not be bound.
+     */
+    public MetricsEndpoint(ServerMetrics metrics, int port) throws IOException {
+        this.metrics = metrics;
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/metrics", this::handle);
+    }
+
+    public void start() {
+        httpServer.start();
+        VoxxServer.LOGGER.info("Serving metrics on http://{}/metrics", httpServer.getAddress());
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            var body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+    }
+}
@@ -0,0 +1,131 @@
+package com.cyr1en.voxx.server.metrics;
+
+import com.cyr1en.voxx.commons.metrics.Histogram;
+import com.cyr1en.voxx.commons.metrics.MetricsRegistry;
+import com.cyr1en.voxx.server.VoxxServer;
+import com.cyr1en.voxx.server.protocol.requests.RequestEnum;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a {@link VoxxServer}.
+ * <p>
+ * Most values are already kept by the components that produce them (the server counts accepted connections
+ * and written bytes, the event bus its queue depth and dispatch latency, the broadcaster its fan-out time),
+ * they are only read when the metrics are written. The request handling counters live here, one set
+ * per request id.
+ */
+public class ServerMetrics {
+
+    private static final String UNKNOWN_REQUEST = "unknown";
+
+    private final MetricsRegistry registry;
+    private final ConcurrentHashMap<String, RequestMetrics> requests;
+
+    /**
+     * Counters of one request id.
+     */
+    public static class RequestMetrics {
+        private final LongAdder received;
+        private final LongAdder sent;
+        private final Histogram handleTime;
+
+        private RequestMetrics(MetricsRegistry registry, String requestId) {
+            this.received = registry.counter("voxx_messages_in_total", "Requests received, by request id.",
+                    "request", requestId);
+            this.sent = registry.counter("voxx_messages_out_total",
+                    "Frames sent back to the requesting client, by request id.", "request", requestId);
+            this.handleTime = registry.timer("voxx_request_duration_seconds", "Time spent handling a request.",
+                    "request", requestId);
+        }
+
+        /**
+         * Record a handled request.
+         *
+         * @param startNanos {@link System#nanoTime()} from before the request was handled.
+         * @param sentFrames frames the handler sent to the client.
+         */
+        public void record(long startNanos, long sentFrames) {
+            handleTime.recordSince(startNanos);
+            received.increment();
+            sent.add(sentFrames);
+        }
+    }
+
+    public ServerMetrics(VoxxServer server) {
+        this.registry = new MetricsRegistry();
+        this.requests = new ConcurrentHashMap<>();
+        var connections = server.getClientConnections();
+        var eventBus = server.getEventBus();
+        var broadcaster = server.getBroadcaster();
+
+        registry.counter("voxx_connections_accepted_total", "Client connections accepted since the server started.",
+                server::getAcceptedConnections);
+        registry.gauge("voxx_connections_active", "Open client connections, by type.",
+                () -> connections.getPrimary().size(), "type", "primary");
+        registry.gauge("voxx_connections_active", "Open client connections, by type.",
+                () -> connections.getSupplemental().size(), "type", "supplemental");
+        registry.gauge("voxx_users_registered", "Registered users, including the ones that may still resume.",
+                () -> server.getUserRegistry().size());
+        registry.counter("voxx_bytes_written_total", "Bytes written to all clients.", server::getBytesWritten);
+        registry.gauge("voxx_eventbus_queue_depth", "Events queued on the event bus that were not handled yet.",
+                eventBus::getQueueDepth);
+        registry.counter("voxx_eventbus_rejected_total", "Events dropped because their queue was full.",
+                eventBus::getRejectedCount);
+        registry.counter("voxx_eventbus_listener_errors_total", "Event listener invocations that threw.",
+                eventBus::getListenerFailureCount);
+        registry.timer("voxx_eventbus_dispatch_seconds", "Time from posting an event until its listeners ran.",
+                eventBus.getDispatchLatency());
+        registry.counter("voxx_updates_sent_total", "Update frames sent by broadcasts, one per recipient.",
+                broadcaster::getSentUpdates);
+        registry.timer("voxx_broadcast_fanout_seconds", "Time to encode and queue a broadcast for all recipients.",
+                broadcaster.getFanOutTime());
+        var messageLog = server.getMessageLog();
+        if (messageLog != null)
+            registry.counter("voxx_log_dropped_total", "Messages that were not written to the message log.",
+                    messageLog::getDroppedCount);
+
+        for (var request : RequestEnum.values())
+            forRequest(request.asString());
+        forRequest(UNKNOWN_REQUEST);
+    }
+
+    /**
+     * @param requestId id of a request that has a handler.
+     * @return the counters of the request id.
+     */
+    public RequestMetrics forRequest(String requestId) {
+        return requests.computeIfAbsent(requestId, id -> new RequestMetrics(registry, id));
+    }
+
+    /**
+     * @return the counters for requests without a handler. Their ids are not used as labels, since
+     * clients could make up any amount of them.
+     */
+    public RequestMetrics forUnknownRequest() {
+        return forRequest(UNKNOWN_REQUEST);
+    }
+
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return the metrics in the Prometheus text format.
+     */
+    public String toPrometheus() {
+        var out = new StringBuilder(4096);
+        registry.writePrometheus(out);
+        return out.toString();
+    }
+
+    /**
+     * @return the metrics, one per line, for people to read.
+     */
+    public String toSummary() {
+        var out = new StringBuilder(2048);
+        registry.writeSummary(out);
+        return out.toString();
+    }
+}
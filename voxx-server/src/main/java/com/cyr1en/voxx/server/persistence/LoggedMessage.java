@@ -0,0 +1,23 @@
+package com.cyr1en.voxx.server.persistence;
+
+import com.cyr1en.voxx.commons.model.Message;
+import com.cyr1en.voxx.commons.model.User;
+
+/**
+ * A message as it was read back from the {@link MessageLog}.
+ *
+ * @param uid        UID of the message.
+ * @param senderUid  UID of the user that sent it.
+ * @param senderName username of the user that sent it.
+ * @param content    content of the message.
+ */
+public record LoggedMessage(long uid, long senderUid, String senderName, String content) {
+
+    public User toSender() {
+        return new User(senderUid, senderName);
+    }
+
+    public Message toMessage(User sender) {
+        return new Message(sender, content, uid);
+    }
+}
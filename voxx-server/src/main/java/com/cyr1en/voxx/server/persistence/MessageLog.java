@@ -0,0 +1,328 @@
+package com.cyr1en.voxx.server.persistence;
+
+import com.cyr1en.voxx.commons.model.Message;
+import com.cyr1en.voxx.commons.model.UID;
+import com.cyr1en.voxx.commons.model.User;
+import com.cyr1en.voxx.server.VoxxServer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Durable, append-only log of chat messages.
+ * <p>
+ * {@link #append(User, Message, long)} only offers the message to a queue and never blocks, so sending
+ * a message stays as fast as before. A single writer thread takes everything that queued up, writes it
+ * into the current memory-mapped {@link Segment} and then flushes the batch to disk with one call (group
+ * commit). Under load many messages share one flush, when it is quiet every message is flushed right away.
+ * Messages that don't fit in the queue or could not be written are counted by {@link #getDroppedCount()}.
+ * <p>
+ * The log has to be in UID order: reading skips segments by their first UID, the index of a segment is
+ * searched by UID and retention looks at the last UID of a segment. Messages are appended concurrently,
+ * so each one comes with its sequence number in the message history, which follows UID order, and the
+ * writer holds a message back until the ones before it were written.
+ * <p>
+ * When a segment is full the writer starts a new one, named after the UID of its first message.
+ * Segments whose newest message is older than the retention period are deleted. When the log is opened,
+ * the last segment is scanned and a record that was torn by a crash is discarded with everything after it.
+ *
+ * <pre>{@code
+ * var log = new MessageLog(Path.of("data/messages"));
+ * log.setRetention(Duration.ofDays(7));
+ * log.open();
+ * }</pre>
+ */
+public class MessageLog implements AutoCloseable {
+
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+    private static final int MAX_BATCH = 4096;
+
+    private final Path directory;
+    private final CopyOnWriteArrayList<Segment> segments;
+    private final BlockingQueue<Queued> queue;
+    // Sequence numbers of messages that didn't fit in the queue, the writer must not wait for them.
+    private final ConcurrentSkipListSet<Long> skipped;
+    private final LongAdder dropped;
+    private int segmentSize;
+    private Duration retention;
+    private Thread writer;
+    private volatile boolean running;
+    // Sequence number of the next message to write, only changed by the writer once it runs.
+    private volatile long nextSequence;
+    private ByteBuffer body;
+
+    public MessageLog(Path directory) {
+        this.directory = directory;
+        this.segments = new CopyOnWriteArrayList<>();
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.skipped = new ConcurrentSkipListSet<>();
+        this.dropped = new LongAdder();
+        this.body = ByteBuffer.allocate(1024);
+        this.segmentSize = 64 * 1024 * 1024;
+        this.retention = Duration.ofDays(7);
+    }
+
+    /**
+     * Set the size of new segment files. Must be called before {@link #open()}.
+     *
+     * @param segmentSize size in bytes.
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Set how long messages are kept. Segments are deleted as a whole once their newest message is older.
+     *
+     * @param retention retention period, {@link Duration#ZERO} keeps messages forever.
+     */
+    public void setRetention(Duration retention) {
+        this.retention = retention;
+    }
+
+    public Duration getRetention() {
+        return retention;
+    }
+
+    /**
+     * Set the sequence number of the first message that will be appended. Must be called before the first
+     * {@link #append(User, Message, long)}.
+     *
+     * @param nextSequence sequence number, 0 by default.
+     */
+    public void setNextSequence(long nextSequence) {
+        this.nextSequence = nextSequence;
+    }
+
+    /**
+     * @return amount of messages that were not written, because the queue was full or writing failed.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Recover the existing segments and start the writer.
+     *
+     * @throws IOException if the directory or a segment could not be opened.
+     */
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        try (var files = Files.list(directory)) {
+            var logFiles = files.filter(f -> f.getFileName().toString().endsWith(".log")).sorted().toList();
+            for (var file : logFiles)
+                segments.add(Segment.open(file));
+        }
+        applyRetention();
+        running = true;
+        writer = new Thread(this::writeLoop, "voxx-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        VoxxServer.LOGGER.info("Opened message log in {} with {} segment(s)", directory, segments.size());
+    }
+
+    /**
+     * Queue a message to be written. It is durable once the writer flushed its batch, usually within
+     * milliseconds. If the disk fell behind by a whole queue of messages, the message is dropped instead.
+     *
+     * @param sender   the user that sent the message.
+     * @param message  the message.
+     * @param sequence sequence number of the message, one more than the one of the previous message.
+     */
+    public void append(User sender, Message message, long sequence) {
+        var record = new LoggedMessage(message.getUIDAsLong(), sender.getUIDAsLong(), sender.getUsername(),
+                message.getContent());
+        if (queue.offer(new Queued(sequence, record))) return;
+        skipped.add(sequence);
+        dropped.increment();
+    }
+
+    /**
+     * Read the logged messages with a UID greater than {@code sinceUid}, oldest first.
+     *
+     * @param sinceUid UID of the last message the caller has, 0 for all of them.
+     * @param consumer receives the messages.
+     */
+    public void read(long sinceUid, Consumer<LoggedMessage> consumer) {
+        var snapshot = List.copyOf(segments);
+        for (int i = 0; i < snapshot.size(); i++) {
+            // Skip segments that end before the requested UID, the next one starts after it.
+            if (i + 1 < snapshot.size() && snapshot.get(i + 1).getBaseUid() <= sinceUid) continue;
+            snapshot.get(i).read(sinceUid, consumer);
+        }
+    }
+
+    /**
+     * @param count maximum number of messages.
+     * @return the newest messages in the log, oldest first.
+     */
+    public List<LoggedMessage> tail(int count) {
+        var snapshot = List.copyOf(segments);
+        var result = new ArrayDeque<LoggedMessage>(count);
+        for (int i = snapshot.size() - 1; i >= 0 && result.size() < count; i--) {
+            var needed = count - result.size();
+            var part = new ArrayDeque<LoggedMessage>(needed);
+            snapshot.get(i).read(0, message -> {
+                part.addLast(message);
+                if (part.size() > needed) part.pollFirst();
+            });
+            while (!part.isEmpty()) result.addFirst(part.pollLast());
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Stop the writer after it wrote and flushed everything that was queued, and close the segments.
+     */
+    @Override
+    public void close() {
+        if (!running) return;
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (var segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                VoxxServer.LOGGER.warn("Could not close message log segment", e);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        var batch = new ArrayList<Queued>(MAX_BATCH);
+        var pending = new TreeMap<Long, LoggedMessage>();
+        var ready = new ArrayDeque<LoggedMessage>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    for (var queued : batch)
+                        pending.put(queued.sequence(), queued.message());
+                    batch.clear();
+                }
+                takeInOrder(pending, ready, false);
+                write(ready);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (IOException | RuntimeException e) {
+                VoxxServer.LOGGER.error("Could not write " + ready.size() + " message(s) to the message log", e);
+                dropped.add(ready.size());
+            } finally {
+                ready.clear();
+            }
+        }
+        // Nothing is appended anymore, a message that is still missing won't come.
+        try {
+            takeInOrder(pending, ready, true);
+            write(ready);
+        } catch (IOException | RuntimeException e) {
+            VoxxServer.LOGGER.error("Could not write " + ready.size() + " message(s) to the message log", e);
+            dropped.add(ready.size());
+        }
+    }
+
+    /**
+     * Move the pending messages that are next in sequence to {@code ready}.
+     *
+     * @param all true to also move the messages that wait for one that is missing.
+     */
+    private void takeInOrder(TreeMap<Long, LoggedMessage> pending, ArrayDeque<LoggedMessage> ready, boolean all) {
+        while (!pending.isEmpty()) {
+            if (skipped.remove(nextSequence)) {
+                nextSequence++;
+                continue;
+            }
+            var sequence = pending.firstKey();
+            if (sequence > nextSequence) {
+                // A message that never arrives would hold back every message after it, so only wait for
+                // it while the messages behind it would still have fit in the queue.
+                if (!all && pending.size() < QUEUE_CAPACITY) return;
+                VoxxServer.LOGGER.warn("Messages {} to {} never reached the message log", nextSequence, sequence - 1);
+                dropped.add(sequence - nextSequence);
+                skipped.headSet(sequence).clear();
+            }
+            ready.addLast(pending.pollFirstEntry().getValue());
+            nextSequence = sequence + 1;
+        }
+    }
+
+    /**
+     * Write messages into the active segment and flush them. Written messages are removed from
+     * {@code messages}, so if writing fails only the ones that were not written are left.
+     */
+    private void write(ArrayDeque<LoggedMessage> messages) throws IOException {
+        if (messages.isEmpty()) return;
+        var active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        var flushFrom = active == null ? 0 : active.getEnd();
+        while (!messages.isEmpty()) {
+            var message = messages.peekFirst();
+            body = Segment.encode(body, message.uid(), message.senderUid(), message.senderName(), message.content());
+            if (active == null || !active.append(message.uid(), body)) {
+                if (active != null) active.force(flushFrom);
+                active = roll(message.uid(), body.remaining());
+                flushFrom = 0;
+                if (!active.append(message.uid(), body)) {
+                    VoxxServer.LOGGER.warn("Message {} is too large for the message log", message.uid());
+                    dropped.increment();
+                }
+            }
+            messages.pollFirst();
+        }
+        active.force(flushFrom);
+    }
+
+    private Segment roll(long baseUid, int recordLength) throws IOException {
+        var size = Math.max(segmentSize, recordLength + Segment.HEADER_LENGTH + 4);
+        var segment = Segment.create(directory, baseUid, size);
+        segments.add(segment);
+        applyRetention();
+        return segment;
+    }
+
+    private void applyRetention() {
+        if (retention.isZero() || retention.isNegative()) return;
+        var cutoff = System.currentTimeMillis() - retention.toMillis();
+        // The active segment is never deleted
+        while (segments.size() > 1) {
+            var oldest = segments.get(0);
+            if (UID.timestampOf(oldest.getLastUid()) >= cutoff) break;
+            segments.remove(0);
+            try {
+                oldest.delete();
+                VoxxServer.LOGGER.info("Deleted message log segment {}", Segment.baseName(oldest.getBaseUid()));
+            } catch (IOException e) {
+                VoxxServer.LOGGER.warn("Could not delete message log segment", e);
+            }
+        }
+    }
+
+    /**
+     * A message on its way to the writer, with its sequence number.
+     */
+    private record Queued(long sequence, LoggedMessage message) {
+    }
+}
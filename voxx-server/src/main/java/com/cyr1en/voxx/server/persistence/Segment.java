@@ -0,0 +1,275 @@
+package com.cyr1en.voxx.server.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * One file of the {@link MessageLog}, memory-mapped at its full size.
+ * <p>
+ * A record is laid out as
+ * <pre>
+ * length (int) | crc32 of the body (int) | body: uid (long) | sender uid (long) | sender name | content
+ * </pre>
+ * where strings are an int byte length followed by UTF-8 bytes. A length of 0 marks the end of the
+ * written part, every append writes one after its record.
+ * <p>
+ * Next to the log file, {@code .idx} holds a sparse index of {@code (uid, offset)} pairs, one for
+ * roughly every {@link #INDEX_INTERVAL} bytes of log. Because UIDs are time-ordered, a read can
+ * binary search the index and start scanning close to the first record it needs.
+ * The index is only a hint, records after its last entry are found by scanning.
+ */
+class Segment {
+
+    static final int HEADER_LENGTH = 8;
+    static final int INDEX_INTERVAL = 4096;
+    private static final int INDEX_ENTRY_LENGTH = 12;
+
+    private final Path logFile;
+    private final Path indexFile;
+    private final long baseUid;
+    private final FileChannel channel;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer buffer;
+    private long[] indexUids;
+    private int[] indexOffsets;
+    private int indexSize;
+    private int lastIndexedOffset;
+    private volatile int end;
+    private volatile long lastUid;
+
+    private Segment(Path logFile, long baseUid, int size) throws IOException {
+        this.logFile = logFile;
+        this.indexFile = logFile.resolveSibling(baseName(baseUid) + ".idx");
+        this.baseUid = baseUid;
+        this.channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        this.indexUids = new long[64];
+        this.indexOffsets = new int[64];
+        this.lastIndexedOffset = -INDEX_INTERVAL;
+    }
+
+    /**
+     * Create a new, empty segment.
+     */
+    static Segment create(Path dir, long baseUid, int size) throws IOException {
+        return new Segment(dir.resolve(baseName(baseUid) + ".log"), baseUid, size);
+    }
+
+    /**
+     * Open an existing segment and find the end of its valid records. A record that was only partly
+     * written when the server crashed fails its checksum, it and anything after it are discarded.
+     */
+    static Segment open(Path logFile) throws IOException {
+        var name = logFile.getFileName().toString();
+        var baseUid = Long.parseLong(name.substring(0, name.length() - ".log".length()));
+        var segment = new Segment(logFile, baseUid, (int) Files.size(logFile));
+        segment.recover();
+        return segment;
+    }
+
+    static String baseName(long baseUid) {
+        return String.format("%020d", baseUid);
+    }
+
+    long getBaseUid() {
+        return baseUid;
+    }
+
+    /**
+     * @return UID of the last record, 0 if the segment is empty.
+     */
+    long getLastUid() {
+        return lastUid;
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    /**
+     * Write a record at the end of the segment. It becomes visible to readers right away, but is only
+     * durable after {@link #force(int)}.
+     *
+     * @param uid  UID of the record, used for the index.
+     * @param body encoded body of the record.
+     * @return false if the segment has no room for the record.
+     */
+    boolean append(long uid, ByteBuffer body) throws IOException {
+        var position = end;
+        var length = body.remaining();
+        // Keep room for the end marker
+        if ((long) position + HEADER_LENGTH + length + 4 > buffer.capacity()) return false;
+        var crc = new CRC32();
+        crc.update(body.duplicate());
+        // Records of a torn write that recovery discarded may still follow, the end marker hides them.
+        buffer.putInt(position + HEADER_LENGTH + length, 0);
+        buffer.put(position + HEADER_LENGTH, body, body.position(), length);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        // The length goes last, so a reader never sees a record before its body is complete.
+        buffer.putInt(position, length);
+        if (position - lastIndexedOffset >= INDEX_INTERVAL) addIndexEntry(uid, position, true);
+        lastUid = uid;
+        end = position + HEADER_LENGTH + length;
+        return true;
+    }
+
+    /**
+     * Flush everything from an offset to the end of the written part, including the end marker, to disk.
+     */
+    void force(int from) throws IOException {
+        var to = end;
+        if (to > from) buffer.force(from, Math.min(to + 4, buffer.capacity()) - from);
+        indexChannel.force(false);
+    }
+
+    /**
+     * Read the records with a UID greater than {@code sinceUid}, oldest first.
+     */
+    void read(long sinceUid, Consumer<LoggedMessage> consumer) {
+        var view = buffer.duplicate();
+        scan(view, startOffset(sinceUid), end, (offset, body) -> {
+            var message = decode(body);
+            if (message.uid() > sinceUid) consumer.accept(message);
+        });
+    }
+
+    void close() throws IOException {
+        channel.close();
+        indexChannel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(logFile);
+        Files.deleteIfExists(indexFile);
+    }
+
+    private void recover() throws IOException {
+        loadIndex();
+        var from = indexSize > 0 ? indexOffsets[indexSize - 1] : 0;
+        var view = buffer.duplicate();
+        var validEnd = scan(view, from, buffer.capacity(), (offset, body) -> {
+            var uid = body.getLong(body.position());
+            if (offset - lastIndexedOffset >= INDEX_INTERVAL) {
+                try {
+                    addIndexEntry(uid, offset, true);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            lastUid = uid;
+        });
+        // Clear the header of a torn record, so it can't be mistaken for a valid one after new appends
+        if (validEnd + HEADER_LENGTH <= buffer.capacity()) buffer.putLong(validEnd, 0);
+        end = validEnd;
+    }
+
+    private void loadIndex() throws IOException {
+        var entries = (int) (indexChannel.size() / INDEX_ENTRY_LENGTH);
+        var bytes = ByteBuffer.allocate(entries * INDEX_ENTRY_LENGTH);
+        indexChannel.read(bytes, 0);
+        bytes.flip();
+        for (int i = 0; i < entries; i++) {
+            var uid = bytes.getLong();
+            var offset = bytes.getInt();
+            // Entries of records that didn't survive are dropped, they are rebuilt while scanning
+            if (offset < 0 || offset >= buffer.capacity() || offset <= lastIndexedOffset || buffer.getInt(offset) <= 0)
+                break;
+            addIndexEntry(uid, offset, false);
+        }
+        indexChannel.truncate((long) indexSize * INDEX_ENTRY_LENGTH);
+    }
+
+    private void addIndexEntry(long uid, int offset, boolean persist) throws IOException {
+        if (indexSize == indexUids.length) {
+            indexUids = Arrays.copyOf(indexUids, indexSize * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+        }
+        indexUids[indexSize] = uid;
+        indexOffsets[indexSize] = offset;
+        indexSize++;
+        lastIndexedOffset = offset;
+        if (persist) {
+            var entry = ByteBuffer.allocate(INDEX_ENTRY_LENGTH).putLong(uid).putInt(offset).flip();
+            indexChannel.write(entry, (long) (indexSize - 1) * INDEX_ENTRY_LENGTH);
+        }
+    }
+
+    /**
+     * @return offset of the last indexed record with a UID not greater than {@code uid}.
+     */
+    private int startOffset(long uid) {
+        int low = 0, high = indexSize - 1, offset = 0;
+        while (low <= high) {
+            var mid = (low + high) >>> 1;
+            if (indexUids[mid] <= uid) {
+                offset = indexOffsets[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return offset;
+    }
+
+    private interface RecordVisitor {
+        void visit(int offset, ByteBuffer body);
+    }
+
+    /**
+     * Visit the valid records from an offset on.
+     *
+     * @return offset after the last valid record.
+     */
+    private static int scan(ByteBuffer view, int from, int limit, RecordVisitor visitor) {
+        var offset = from;
+        var crc = new CRC32();
+        while (offset + HEADER_LENGTH <= limit) {
+            var length = view.getInt(offset);
+            if (length <= 0 || length > limit - offset - HEADER_LENGTH) break;
+            var body = view.slice(offset + HEADER_LENGTH, length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != view.getInt(offset + 4)) break;
+            visitor.visit(offset, body);
+            offset += HEADER_LENGTH + length;
+        }
+        return offset;
+    }
+
+    static ByteBuffer encode(ByteBuffer target, long uid, long senderUid, String senderName, String content) {
+        var name = senderName.getBytes(StandardCharsets.UTF_8);
+        var text = content.getBytes(StandardCharsets.UTF_8);
+        var length = 16 + 4 + name.length + 4 + text.length;
+        if (target.capacity() < length) target = ByteBuffer.allocate(Math.max(length, target.capacity() * 2));
+        return target.clear()
+                .putLong(uid)
+                .putLong(senderUid)
+                .putInt(name.length).put(name)
+                .putInt(text.length).put(text)
+                .flip();
+    }
+
+    private static LoggedMessage decode(ByteBuffer body) {
+        var uid = body.getLong();
+        var senderUid = body.getLong();
+        var name = new byte[body.getInt()];
+        body.get(name);
+        var text = new byte[body.getInt()];
+        body.get(text);
+        return new LoggedMessage(uid, senderUid, new String(name, StandardCharsets.UTF_8),
+                new String(text, StandardCharsets.UTF_8));
+    }
+}
@@ -1,50 +1,37 @@
 package com.cyr1en.voxx.server.protocol;
 
 import com.cyr1en.voxx.commons.esal.events.server.ClientMessageEvent;
-import com.cyr1en.voxx.commons.protocol.Request;
+import com.cyr1en.voxx.commons.protocol.RequestEnvelope;
 import com.cyr1en.voxx.server.VoxxServer;
-import com.cyr1en.voxx.server.protocol.requests.RequestEnum;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.cyr1en.voxx.server.metrics.ServerMetrics;
 
-import java.util.Arrays;
 import java.util.Objects;
 
 public class ProtocolHandler {
 
-    private final VoxxServer serverInstance;
+    private final RequestRegistry requestRegistry;
+    private final ServerMetrics metrics;
 
     public ProtocolHandler(VoxxServer serverInstance) {
-        this.serverInstance = serverInstance;
+        this.requestRegistry = new RequestRegistry(serverInstance);
+        this.metrics = serverInstance.getMetrics();
     }
 
-    public void handOnMessage(ClientMessageEvent event) {
-        var req = RequestParser.parse(event, serverInstance);
-        if (Objects.nonNull(req))
-            req.onRequest(event);
+    public RequestRegistry getRequestRegistry() {
+        return requestRegistry;
     }
 
-    public static class RequestParser {
-        public static Request parse(ClientMessageEvent event, VoxxServer server) {
-            JSONObject json;
-            try {
-                VoxxServer.LOGGER.info("Parsing: '{}'", event.getMessage());
-                json = new JSONObject(event.getMessage());
-            } catch (JSONException e) {
-                VoxxServer.LOGGER.info("Non-Json request from ({})",
-                        event.getClientConnection().getRemoteAddress());
-                return null;
-            }
-            var reqID = json.getString("request-id");
-            var optional = Arrays.stream(RequestEnum.values()).filter(e -> e.asString().equals(reqID)).findAny();
-            if (optional.isEmpty()) return null;
-            try {
-                var req = optional.get();
-                return req.construct(server);
-            } catch (Exception e) {
-                VoxxServer.LOGGER.error("Unable to parse message json from message");
-                return null;
-            }
+    public void handOnMessage(ClientMessageEvent event, RequestEnvelope request) {
+        var req = requestRegistry.get(request.requestId());
+        if (Objects.isNull(req)) {
+            metrics.forUnknownRequest().record(System.nanoTime(), 0);
+            return;
         }
+        var cc = event.getClientConnection();
+        // Updates broadcast to a multiplexed connection while the request runs are counted too.
+        var sentBefore = cc.getSentFrames();
+        var start = System.nanoTime();
+        req.onRequest(event, request);
+        metrics.forRequest(request.requestId()).record(start, cc.getSentFrames() - sentBefore);
     }
 }
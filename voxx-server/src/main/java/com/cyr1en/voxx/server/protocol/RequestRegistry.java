@@ -0,0 +1,60 @@
+package com.cyr1en.voxx.server.protocol;
+
+import com.cyr1en.voxx.commons.protocol.Request;
+import com.cyr1en.voxx.server.VoxxServer;
+import com.cyr1en.voxx.server.protocol.requests.RequestEnum;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps request ids to the {@link Request} that handles them.
+ * <p>
+ * Every handler is created once when the registry is created and then shared by all clients, so
+ * handlers must not keep per request state. Built-in requests are looked up with
+ * {@link RequestEnum#fromId(String)} and indexed by ordinal, additional request types can be
+ * registered at runtime with {@link #register(String, Request)}.
+ */
+public class RequestRegistry {
+
+    private final Request[] builtIns;
+    private final ConcurrentHashMap<String, Request> registered;
+
+    public RequestRegistry(VoxxServer server) {
+        var values = RequestEnum.values();
+        this.builtIns = new Request[values.length];
+        for (var value : values)
+            builtIns[value.ordinal()] = value.construct(server);
+        this.registered = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Register a handler for an additional request type.
+     *
+     * @param requestId id of the request.
+     * @param request   the handler, shared by all clients.
+     * @throws IllegalArgumentException if the id is already taken.
+     */
+    public void register(String requestId, Request request) {
+        if (RequestEnum.fromId(requestId) != null || registered.putIfAbsent(requestId, request) != null)
+            throw new IllegalArgumentException("Request id " + requestId + " is already registered");
+    }
+
+    /**
+     * Remove a handler that was added with {@link #register(String, Request)}.
+     *
+     * @param requestId id of the request.
+     */
+    public void unregister(String requestId) {
+        registered.remove(requestId);
+    }
+
+    /**
+     * @param requestId id of the request.
+     * @return the handler of the request, or null if the id is unknown.
+     */
+    public Request get(String requestId) {
+        var builtIn = RequestEnum.fromId(requestId);
+        if (builtIn != null) return builtIns[builtIn.ordinal()];
+        return registered.get(requestId);
+    }
+}
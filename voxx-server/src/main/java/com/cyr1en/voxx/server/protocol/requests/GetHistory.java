@@ -0,0 +1,47 @@
+package com.cyr1en.voxx.server.protocol.requests;
+
+import com.cyr1en.voxx.commons.esal.events.server.ClientMessageEvent;
+import com.cyr1en.voxx.commons.protocol.Request;
+import com.cyr1en.voxx.commons.protocol.RequestEnvelope;
+import com.cyr1en.voxx.server.VoxxServer;
+
+/**
+ * Send the messages a client missed, one batch per request.
+ * <p>
+ * The messages after the UID in {@code since} are sent as "nm" update messages, followed by the response
+ * that tells how many were sent, the UID of the last one and whether there are more. The client asks for
+ * the next batch with that UID until {@code more} is false.
+ */
+public class GetHistory implements Request {
+
+    public static final int MAX_BATCH = 100;
+
+    private final VoxxServer voxx;
+
+    public GetHistory(VoxxServer voxx) {
+        this.voxx = voxx;
+    }
+
+    @Override
+    public void onRequest(ClientMessageEvent event, RequestEnvelope request) {
+        var cc = event.getClientConnection();
+        var codec = cc.getCodec();
+        if (cc.getAssocUser() == null) {
+            cc.sendFrame(codec.failure(request.correlationId(), "User registration is required before requesting history!"));
+            return;
+        }
+        var since = request.params().optLong("since", 0);
+        var limit = request.params().optInt("limit", MAX_BATCH);
+        if (limit <= 0 || limit > MAX_BATCH) limit = MAX_BATCH;
+
+        var entries = voxx.getMessageHistory().since(since, limit + 1);
+        var more = entries.size() > limit;
+        if (more) entries.remove(entries.size() - 1);
+        var lastUid = 0L;
+        for (var entry : entries) {
+            cc.sendFrame(entry.frame(codec));
+            lastUid = entry.getUID();
+        }
+        cc.sendFrame(codec.historyBatch(request.correlationId(), entries.size(), lastUid, more));
+    }
+}
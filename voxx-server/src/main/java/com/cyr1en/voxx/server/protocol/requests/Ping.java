@@ -1,10 +1,9 @@
 package com.cyr1en.voxx.server.protocol.requests;
 
 import com.cyr1en.voxx.commons.esal.events.server.ClientMessageEvent;
-import com.cyr1en.voxx.commons.protocol.ProtocolUtil;
 import com.cyr1en.voxx.commons.protocol.Request;
+import com.cyr1en.voxx.commons.protocol.RequestEnvelope;
 import com.cyr1en.voxx.server.VoxxServer;
-import org.json.JSONObject;
 
 public class Ping implements Request {
 
@@ -12,9 +11,9 @@ public class Ping implements Request {
     }
 
     @Override
-    public void onRequest(ClientMessageEvent event) {
+    public void onRequest(ClientMessageEvent event, RequestEnvelope request) {
         var ts = System.currentTimeMillis();
-        var res = new JSONObject().put("response-id", 1).put("body", ts);
-        event.getClientConnection().sendMessage(ProtocolUtil.flattenJSONObject(res));
+        var cc = event.getClientConnection();
+        cc.sendFrame(cc.getCodec().pong(request.correlationId(), ts));
     }
 }
@@ -2,67 +2,39 @@ package com.cyr1en.voxx.server.protocol.requests;
 
 import com.cyr1en.voxx.commons.esal.events.server.ClientMessageEvent;
 import com.cyr1en.voxx.commons.protocol.Request;
+import com.cyr1en.voxx.commons.protocol.RequestEnvelope;
 import com.cyr1en.voxx.server.VoxxServer;
-import org.json.JSONObject;
 
 public class RegisterUser implements Request {
 
-    private static final String INCORRECT_ARG;
-    private static final String RESPONSE;
-
     private final VoxxServer voxx;
 
-    static {
-        INCORRECT_ARG = """
-                {
-                  "response-id": 0,
-                  "body": {
-                    "message": "%s is already taken"
-                  }
-                }
-                """;
-        RESPONSE = """
-                {
-                  %s,
-                  "body": {
-                    "user": {
-                      "uid": %d,
-                      "uname": "%s"
-                    }
-                  }
-                }
-                """;
-    }
-
     public RegisterUser(VoxxServer voxx) {
         this.voxx = voxx;
     }
 
     @Override
-    public void onRequest(ClientMessageEvent event) {
+    public void onRequest(ClientMessageEvent event, RequestEnvelope request) {
         var userRegistry = voxx.getUserRegistry();
-        var json = new JSONObject(event.getMessage());
-        var uname = json.getJSONObject("params").getString("uname");
+        var uname = request.params().getString("uname");
         var remoteAddr = event.getClientConnection().getRemoteAddress();
 
-        if (userRegistry.isRegistered(uname)) {
-            var cc = event.getClientConnection();
-            cc.sendMessage(String.format(INCORRECT_ARG, uname));
+        var cc = event.getClientConnection();
+        var user = userRegistry.registerNewUser(uname, cc);
+        if (user == null) {
+            cc.sendFrame(cc.getCodec().usernameTaken(request.correlationId(), uname));
             VoxxServer.LOGGER.warn("Client ({}) attempted to register with existing username.",
                     remoteAddr);
         } else {
-            var user = userRegistry.registerNewUser(uname);
-            event.getClientConnection().setAssocUser(user);
+            cc.setAssocUser(user);
             VoxxServer.LOGGER.info("Client ({}) registered as user: {}", remoteAddr, uname);
-            event.getClientConnection().sendMessage(String.format(RESPONSE, "\"response-id\": 1",
-                    user.getUID().asLong(), user.getUsername()));
-
-            var responseJson = new JSONObject();
-            responseJson.put("update-message", "nu");
-            var body = new JSONObject().put("user", new JSONObject().put("uid", user.getUID().asLong())
-                    .put("uname", user.getUsername()));
-            responseJson.put("body", body);
-            voxx.broadcastWithExclusions(user, responseJson);
+            // A multiplexed client gets its updates on this connection. It is attached before anything
+            // is broadcast, so the client can't miss updates between registering and listening.
+            var multiplexed = request.params().optBoolean("mux");
+            if (multiplexed) voxx.getBroadcaster().register(user, cc);
+            var session = voxx.getSessionManager().open(user, cc);
+            cc.sendFrame(cc.getCodec().userRegistered(request.correlationId(), user, multiplexed, session.getToken()));
+            voxx.broadcastWithExclusions(user, (codec, seq) -> codec.newUser(seq, user));
         }
     }
 
@@ -3,30 +3,49 @@ package com.cyr1en.voxx.server.protocol.requests;
 import com.cyr1en.voxx.commons.protocol.Request;
 import com.cyr1en.voxx.server.VoxxServer;
 
-import java.lang.reflect.InvocationTargetException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
 
 public enum RequestEnum {
-    PING("ping", Ping.class),
-    REGISTER_USER("ru", RegisterUser.class),
-    SEND_MESSAGE("sm", SendMessage.class),
-    USER_LIST("ul", UserList.class),
-    SET_UPDATE_CONNECTION("su", SetUpdateConnection.class);
+    PING("ping", Ping::new),
+    REGISTER_USER("ru", RegisterUser::new),
+    SEND_MESSAGE("sm", SendMessage::new),
+    USER_LIST("ul", UserList::new),
+    SET_UPDATE_CONNECTION("su", SetUpdateConnection::new),
+    RESUME_SESSION("rs", ResumeSession::new),
+    GET_HISTORY("hs", GetHistory::new);
+
+    private static final Map<String, RequestEnum> BY_ID = new HashMap<>();
+
+    static {
+        for (var request : values())
+            BY_ID.put(request.asString(), request);
+    }
 
     private final String id;
-    private final Class<? extends Request> reqClass;
+    private final Function<VoxxServer, Request> factory;
 
-    RequestEnum(String id, Class<? extends Request> reqClass) {
+    RequestEnum(String id, Function<VoxxServer, Request> factory) {
         this.id = id;
-        this.reqClass = reqClass;
+        this.factory = factory;
     }
 
     public String asString() {
         return id;
     }
 
-    public Request construct(VoxxServer serverInstance) throws NoSuchMethodException, InvocationTargetException,
-            InstantiationException, IllegalAccessException {
-        var constructor = reqClass.getConstructor(VoxxServer.class);
-        return constructor.newInstance(serverInstance);
+    public Request construct(VoxxServer serverInstance) {
+        return factory.apply(serverInstance);
+    }
+
+    /**
+     * Look up a built-in request by its id.
+     *
+     * @param id id of the request.
+     * @return the request, or null if there is no built-in request with that id.
+     */
+    public static RequestEnum fromId(String id) {
+        return BY_ID.get(id);
     }
 }
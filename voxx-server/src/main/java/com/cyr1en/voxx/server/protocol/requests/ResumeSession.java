@@ -0,0 +1,46 @@
+package com.cyr1en.voxx.server.protocol.requests;
+
+import com.cyr1en.voxx.commons.esal.events.server.ClientMessageEvent;
+import com.cyr1en.voxx.commons.protocol.Request;
+import com.cyr1en.voxx.commons.protocol.RequestEnvelope;
+import com.cyr1en.voxx.server.VoxxServer;
+
+/**
+ * Continue the session of a user on a new connection after the previous one dropped.
+ * <p>
+ * The client sends the resume token it got when it registered and the sequence number of the last
+ * update it received. The connection is associated with the same user again, and if the client asks
+ * for a multiplexed connection, the updates it missed are replayed right after the response.
+ */
+public class ResumeSession implements Request {
+
+    private final VoxxServer voxx;
+
+    public ResumeSession(VoxxServer voxx) {
+        this.voxx = voxx;
+    }
+
+    @Override
+    public void onRequest(ClientMessageEvent event, RequestEnvelope request) {
+        var cc = event.getClientConnection();
+        var params = request.params();
+        var session = voxx.getSessionManager().resume(params.optString("token", ""), cc);
+        if (session == null) {
+            cc.sendFrame(cc.getCodec().failure(request.correlationId(), "Session expired"));
+            VoxxServer.LOGGER.warn("Client ({}) attempted to resume an unknown session.", cc.getRemoteAddress());
+            return;
+        }
+
+        var user = session.getUser();
+        cc.setAssocUser(user);
+        var multiplexed = params.optBoolean("mux");
+        cc.sendFrame(cc.getCodec().userRegistered(request.correlationId(), user, multiplexed, session.getToken()));
+        VoxxServer.LOGGER.info("Client ({}) resumed the session of user: {}", cc.getRemoteAddress(), user);
+        if (!multiplexed) return;
+
+        // Updates from before the user registered were never meant for this client.
+        var lastSeq = Math.max(params.optLong("seq", 0), session.getJoinedSeq());
+        if (!voxx.getBroadcaster().resume(user, cc, lastSeq))
+            VoxxServer.LOGGER.warn("Some updates for ({}) were no longer in the journal.", user);
+    }
+}
@@ -1,12 +1,9 @@
 package com.cyr1en.voxx.server.protocol.requests;
 
 import com.cyr1en.voxx.commons.esal.events.server.ClientMessageEvent;
-import com.cyr1en.voxx.commons.model.Message;
-import com.cyr1en.voxx.commons.model.UID;
-import com.cyr1en.voxx.commons.protocol.ProtocolUtil;
 import com.cyr1en.voxx.commons.protocol.Request;
+import com.cyr1en.voxx.commons.protocol.RequestEnvelope;
 import com.cyr1en.voxx.server.VoxxServer;
-import org.json.JSONObject;
 
 public class SendMessage implements Request {
 
@@ -17,31 +14,14 @@ public class SendMessage implements Request {
     }
 
     @Override
-    public void onRequest(ClientMessageEvent event) {
+    public void onRequest(ClientMessageEvent event, RequestEnvelope request) {
         var assocUser = event.getClientConnection().getAssocUser();
-        VoxxServer.LOGGER.info("Client associated with: " + assocUser);
-        var reqJson = new JSONObject(event.getMessage()).getJSONObject("params");
-        var message = new Message(assocUser, reqJson.getString("message"), UID.Generator.generate());
+        VoxxServer.LOGGER.debug("Client associated with: {}", assocUser);
+        var message = server.acceptMessage(assocUser, request.params().getString("message"));
 
-        var resJson = new JSONObject();
-        resJson.put("response-id", 1);
-        resJson.put("body", new JSONObject().put("message", new JSONObject()
-                .put("uid", message.getUID().asLong())
-                .put("content", message.getContent())));
-        event.getClientConnection().sendMessage(ProtocolUtil.flattenJSONObject(resJson));
-
-        var messageJson = new JSONObject();
-        messageJson.put("update-message", "nm");
-        var body = new JSONObject();
-        body.put("sender", new JSONObject()
-                .put("uid", assocUser.getUID().asLong())
-                .put("uname", assocUser.getUsername()));
-        body.put("message", new JSONObject()
-                .put("uid", message.getUID().asLong())
-                .put("content", message.getContent()));
-        messageJson.put("body", body);
-
-        server.broadcastWithExclusions(assocUser, messageJson);
+        var cc = event.getClientConnection();
+        cc.sendFrame(cc.getCodec().messageAccepted(request.correlationId(), message));
+        server.broadcastWithExclusions(assocUser, (codec, seq) -> codec.newMessage(seq, assocUser, message));
     }
 
 }
@@ -2,8 +2,10 @@ package com.cyr1en.voxx.server.protocol.requests;
 
 import com.cyr1en.voxx.commons.esal.events.server.ClientMessageEvent;
 import com.cyr1en.voxx.commons.protocol.Request;
+import com.cyr1en.voxx.commons.protocol.RequestEnvelope;
+import com.cyr1en.voxx.server.Broadcaster;
+import com.cyr1en.voxx.server.UserRegistry;
 import com.cyr1en.voxx.server.VoxxServer;
-import org.json.JSONObject;
 
 import java.util.Objects;
 
@@ -11,27 +13,27 @@ import java.util.Objects;
  * Set the connection to the client an update connection.
  */
 public class SetUpdateConnection implements Request {
-    private final VoxxServer.UserRegistry userRegistry;
+    private final UserRegistry userRegistry;
+    private final Broadcaster broadcaster;
 
     public SetUpdateConnection(VoxxServer voxxServer) {
         this.userRegistry = voxxServer.getUserRegistry();
+        this.broadcaster = voxxServer.getBroadcaster();
     }
 
     @Override
-    public void onRequest(ClientMessageEvent event) {
-        var params = new JSONObject(event.getMessage()).getJSONObject("params");
-        var mainUser = params.getString("main-user");
-        if (!userRegistry.getUserMap().containsKey(mainUser)) return;
-
-        var user = userRegistry.getUserMap().get(mainUser);
+    public void onRequest(ClientMessageEvent event, RequestEnvelope request) {
+        var mainUser = request.params().getString("main-user");
+        var user = userRegistry.getUser(mainUser);
         if(Objects.nonNull(user)) {
             event.getClientConnection().setAssocUser(user);
             event.getClientConnection().setSupplementalConnection(true);
+            broadcaster.register(user, event.getClientConnection());
             VoxxServer.LOGGER.info("Client ({}) is now a supplemental connection for ({})",
                     event.getClientConnection().getRemoteAddress(), user);
-            event.getClientConnection().sendMessage("{\"response-id\": 1}");
+            event.getClientConnection().sendFrame(event.getClientConnection().getCodec().ack(request.correlationId(), true));
         } else {
-            event.getClientConnection().sendMessage("{\"response-id\": 0}");
+            event.getClientConnection().sendFrame(event.getClientConnection().getCodec().ack(request.correlationId(), false));
         }
     }
 }
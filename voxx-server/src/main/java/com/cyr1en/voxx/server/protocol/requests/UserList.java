@@ -1,30 +1,22 @@
 package com.cyr1en.voxx.server.protocol.requests;
 
 import com.cyr1en.voxx.commons.esal.events.server.ClientMessageEvent;
-import com.cyr1en.voxx.commons.protocol.ProtocolUtil;
 import com.cyr1en.voxx.commons.protocol.Request;
+import com.cyr1en.voxx.commons.protocol.RequestEnvelope;
+import com.cyr1en.voxx.server.UserRegistry;
 import com.cyr1en.voxx.server.VoxxServer;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 public class UserList implements Request {
 
-    private final VoxxServer.UserRegistry userRegistry;
+    private final UserRegistry userRegistry;
 
     public UserList(VoxxServer voxxServer) {
         this.userRegistry = voxxServer.getUserRegistry();
     }
 
     @Override
-    public void onRequest(ClientMessageEvent event) {
-        var response = new JSONObject();
-        var users = new JSONArray();
-        userRegistry.getUserMap().forEach((k, v) -> users.put(new JSONObject()
-                .put("uid", v.getUID().asLong())
-                .put("uname", v.getUsername())));
-        response.put("response-id", 1);
-        response.put("body", new JSONObject()
-                .put("users", users));
-        event.getClientConnection().sendMessage(ProtocolUtil.flattenJSONObject(response));
+    public void onRequest(ClientMessageEvent event, RequestEnvelope request) {
+        var cc = event.getClientConnection();
+        cc.sendFrame(cc.getCodec().userList(request.correlationId(), userRegistry.getUsers()));
     }
 }
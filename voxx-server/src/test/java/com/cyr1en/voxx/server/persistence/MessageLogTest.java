@@ -0,0 +1,127 @@
+package com.cyr1en.voxx.server.persistence;
+
+import com.cyr1en.voxx.commons.model.Message;
+import com.cyr1en.voxx.commons.model.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+
+public class MessageLogTest {
+
+    private static final User SENDER = new User(1, "alice");
+    // A record of these messages is 8 bytes of header and 39 bytes of body.
+    private static final int RECORD_LENGTH = 47;
+
+    private static MessageLog open(Path directory, long nextSequence) throws IOException {
+        var log = new MessageLog(directory);
+        log.setRetention(Duration.ZERO);
+        log.open();
+        log.setNextSequence(nextSequence);
+        return log;
+    }
+
+    private static Message message(long uid) {
+        return new Message(SENDER, "message" + uid, uid);
+    }
+
+    private static List<Long> uids(MessageLog log) {
+        return log.tail(100).stream().map(LoggedMessage::uid).toList();
+    }
+
+    private static Path segmentFile(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(f -> f.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (var files = Files.walk(directory)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testWritesInSequenceOrderAndReopens() throws IOException {
+        var directory = Files.createTempDirectory("voxx-log");
+        try {
+            var log = open(directory, 0);
+            // Appended out of order, like concurrent senders would
+            log.append(SENDER, message(102), 2);
+            log.append(SENDER, message(100), 0);
+            log.append(SENDER, message(101), 1);
+            log.close();
+
+            log = open(directory, 3);
+            Assertions.assertEquals(List.of(100L, 101L, 102L), uids(log));
+            Assertions.assertEquals("message101", log.tail(2).get(0).content());
+            Assertions.assertEquals(0, log.getDroppedCount());
+            log.close();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testRecoveryDropsRecordWithBadChecksum() throws IOException {
+        var directory = Files.createTempDirectory("voxx-log");
+        try {
+            var log = open(directory, 0);
+            for (int i = 0; i < 3; i++)
+                log.append(SENDER, message(100 + i), i);
+            log.close();
+
+            // Flip a byte in the content of the second record, it and everything after it are discarded
+            try (var channel = FileChannel.open(segmentFile(directory), StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{'X'}), RECORD_LENGTH + RECORD_LENGTH - 1);
+            }
+
+            log = open(directory, 3);
+            Assertions.assertEquals(List.of(100L), uids(log));
+            log.append(SENDER, message(103), 3);
+            log.close();
+
+            log = open(directory, 4);
+            Assertions.assertEquals(List.of(100L, 103L), uids(log));
+            log.close();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testRecoveryDropsTruncatedTail() throws IOException {
+        var directory = Files.createTempDirectory("voxx-log");
+        try {
+            var log = open(directory, 0);
+            for (int i = 0; i < 2; i++)
+                log.append(SENDER, message(100 + i), i);
+            log.close();
+
+            // Cut the file in the middle of the second record, as if the server crashed while writing it
+            try (var channel = FileChannel.open(segmentFile(directory), StandardOpenOption.WRITE)) {
+                channel.truncate(RECORD_LENGTH + RECORD_LENGTH / 2);
+            }
+
+            log = open(directory, 2);
+            Assertions.assertEquals(List.of(100L), uids(log));
+            log.append(SENDER, message(102), 2);
+            log.close();
+
+            log = open(directory, 3);
+            Assertions.assertEquals(List.of(100L, 102L), uids(log));
+            log.close();
+        } finally {
+            delete(directory);
+        }
+    }
+}